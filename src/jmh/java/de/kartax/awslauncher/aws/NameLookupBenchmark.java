@@ -0,0 +1,68 @@
+package de.kartax.awslauncher.aws;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Rendering a page of the snapshot grid: resolving the Name tag per row from the SDK model
+ * versus reading it from the pre-built {@link ResourceIndex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameLookupBenchmark {
+
+    @Param({"10000"})
+    int snapshotCount;
+
+    @Param({"50"})
+    int pageSize;
+
+    private List<Snapshot> snapshots;
+    private ResourceIndex<Snapshot> index;
+
+    @Setup(Level.Trial)
+    public void createSnapshots() {
+        snapshots = IntStream.range(0, snapshotCount).mapToObj(SyntheticAws::snapshot).toList();
+        index = ResourceIndex.ofSnapshots(snapshots);
+    }
+
+    @Benchmark
+    public void tagScan(Blackhole blackhole) {
+        for (Snapshot snapshot : snapshots) {
+            blackhole.consume(ResourceNames.nameOrId(snapshot.tags(), snapshot.snapshotId()));
+        }
+    }
+
+    @Benchmark
+    public void indexLookup(Blackhole blackhole) {
+        for (Snapshot snapshot : snapshots) {
+            blackhole.consume(index.nameOf(snapshot.snapshotId()));
+        }
+    }
+
+    @Benchmark
+    public void sortedPage(Blackhole blackhole) {
+        index.query(null, ResourceIndex.SORT_NAME, true, snapshotCount / 2, pageSize)
+                .forEach(blackhole::consume);
+    }
+}
@@ -0,0 +1,104 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.ec2.model.DescribeInstancesResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeSnapshotsResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesResponse;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.Volume;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Cost of turning describe responses into the dashboard state: flattening the pages,
+ * merging into the cache, building the indexes and diffing against the previous state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RefreshBenchmark {
+
+    @Param({"10000"})
+    int snapshotCount;
+
+    @Param({"1000"})
+    int volumeCount;
+
+    @Param({"0.01"})
+    double changedRatio;
+
+    private List<DescribeInstancesResponse> instancePages;
+    private List<DescribeVolumesResponse> volumePages;
+    private List<DescribeSnapshotsResponse> snapshotPages;
+    private List<DescribeSnapshotsResponse> changedSnapshotPages;
+    private AwsStateCache warmCache;
+
+    @Setup(Level.Trial)
+    public void createResponses() {
+        instancePages = SyntheticAws.instancePages(10);
+        volumePages = SyntheticAws.volumePages(volumeCount);
+        snapshotPages = SyntheticAws.snapshotPages(snapshotCount);
+
+        int every = (int) Math.max(1, Math.round(1 / changedRatio));
+        changedSnapshotPages = snapshotPages.stream()
+                .map(page -> {
+                    List<Snapshot> snapshots = new ArrayList<>(page.snapshots());
+                    for (int i = 0; i < snapshots.size(); i += every) {
+                        snapshots.set(i, snapshots.get(i).toBuilder().state(SnapshotState.PENDING).progress("42%").build());
+                    }
+                    return page.toBuilder().snapshots(snapshots).build();
+                })
+                .toList();
+    }
+
+    @Setup(Level.Invocation)
+    public void warmUpCache() {
+        warmCache = new AwsStateCache();
+        warmCache.update(event(snapshotPages));
+    }
+
+    @Benchmark
+    public DashboardUpdateEvent coldRefresh() {
+        return new AwsStateCache().update(event(snapshotPages));
+    }
+
+    @Benchmark
+    public DashboardUpdateEvent incrementalRefresh() {
+        return warmCache.update(event(changedSnapshotPages));
+    }
+
+    private DashboardUpdateEvent event(List<DescribeSnapshotsResponse> snapshots) {
+        var event = new DashboardUpdateEvent(this);
+        event.setInstances(instancePages.stream()
+                .flatMap(response -> response.reservations().stream())
+                .flatMap(reservation -> reservation.instances().stream())
+                .collect(Collectors.<Instance>toList()));
+        event.setVolumes(volumePages.stream()
+                .flatMap(response -> response.volumes().stream())
+                .collect(Collectors.<Volume>toList()));
+        event.setSnapshots(snapshots.stream()
+                .flatMap(response -> response.snapshots().stream())
+                .collect(Collectors.<Snapshot>toList()));
+        return event;
+    }
+}
@@ -0,0 +1,105 @@
+package de.kartax.awslauncher.aws;
+
+import software.amazon.awssdk.services.ec2.model.DescribeInstancesResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeSnapshotsResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesResponse;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+import software.amazon.awssdk.services.ec2.model.Reservation;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.Volume;
+import software.amazon.awssdk.services.ec2.model.VolumeState;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Synthetic EC2 describe responses standing in for AWS in benchmarks.
+ */
+public final class SyntheticAws {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final Instant EPOCH = Instant.parse("2024-01-01T00:00:00Z");
+
+    private SyntheticAws() {
+    }
+
+    public static List<DescribeSnapshotsResponse> snapshotPages(int count) {
+        List<DescribeSnapshotsResponse> pages = new ArrayList<>();
+        for (int start = 0; start < count; start += PAGE_SIZE) {
+            pages.add(DescribeSnapshotsResponse.builder()
+                    .snapshots(IntStream.range(start, Math.min(start + PAGE_SIZE, count)).mapToObj(SyntheticAws::snapshot).toList())
+                    .build());
+        }
+        return pages;
+    }
+
+    public static List<DescribeVolumesResponse> volumePages(int count) {
+        List<DescribeVolumesResponse> pages = new ArrayList<>();
+        for (int start = 0; start < count; start += PAGE_SIZE) {
+            pages.add(DescribeVolumesResponse.builder()
+                    .volumes(IntStream.range(start, Math.min(start + PAGE_SIZE, count)).mapToObj(SyntheticAws::volume).toList())
+                    .build());
+        }
+        return pages;
+    }
+
+    public static List<DescribeInstancesResponse> instancePages(int count) {
+        return List.of(DescribeInstancesResponse.builder()
+                .reservations(Reservation.builder()
+                        .instances(IntStream.range(0, count).mapToObj(SyntheticAws::instance).toList())
+                        .build())
+                .build());
+    }
+
+    public static Snapshot snapshot(int i) {
+        return Snapshot.builder()
+                .snapshotId(String.format("snap-%017x", i))
+                .volumeId(String.format("vol-%017x", i % 1000))
+                .volumeSize(300)
+                .progress("100%")
+                .state(SnapshotState.COMPLETED)
+                .startTime(EPOCH.plusSeconds(i * 3600L))
+                .description("Created by CreateImage for GamingRig " + i)
+                .tags(tags(i, "GamingRig-" + i))
+                .build();
+    }
+
+    public static Volume volume(int i) {
+        return Volume.builder()
+                .volumeId(String.format("vol-%017x", i))
+                .size(300)
+                .state(VolumeState.AVAILABLE)
+                .availabilityZone("eu-central-1a")
+                .createTime(EPOCH.plusSeconds(i * 60L))
+                .tags(tags(i, "GamingRig-" + i))
+                .build();
+    }
+
+    public static Instance instance(int i) {
+        return Instance.builder()
+                .instanceId(String.format("i-%017x", i))
+                .instanceType("g5.2xlarge")
+                .state(InstanceState.builder().name(InstanceStateName.STOPPED).build())
+                .launchTime(EPOCH)
+                .tags(tags(i, "GamingRig-" + i))
+                .build();
+    }
+
+    /**
+     * A handful of tags with {@code Name} last, the worst case for a linear tag scan.
+     */
+    private static List<Tag> tags(int i, String name) {
+        return List.of(
+                Tag.builder().key("Project").value("GamingRig").build(),
+                Tag.builder().key("Owner").value("kartax").build(),
+                Tag.builder().key("CreatedBy").value("LaunchRecentGamingRig").build(),
+                Tag.builder().key("Generation").value(Integer.toString(i)).build(),
+                Tag.builder().key("Name").value(name).build());
+    }
+}
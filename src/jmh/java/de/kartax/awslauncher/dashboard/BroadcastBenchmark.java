@@ -0,0 +1,64 @@
+package de.kartax.awslauncher.dashboard;
+
+import de.kartax.awslauncher.activity.ActivityLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishing one update to many registered views. Delivery happens on the service's own threads,
+ * so this measures what the publishing thread pays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int listenerCount;
+
+    private DashboardEventService eventService;
+    private DashboardUpdateEvent event;
+    private volatile long delivered;
+
+    @Setup(Level.Trial)
+    public void registerListeners() throws IOException {
+        var activityLog = new ActivityLog(Files.createTempFile("activity", ".txt").toString(), 1000, 1 << 20);
+        eventService = new DashboardEventService(activityLog, 4);
+        for (int i = 0; i < listenerCount; i++) {
+            eventService.register(update -> delivered++);
+        }
+        event = new DashboardUpdateEvent(this);
+        event.setCurrentMonthCost(List.of(BigDecimal.ONE, BigDecimal.TEN));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        eventService.stop();
+    }
+
+    @Benchmark
+    public long broadcastEvent() {
+        eventService.broadcastEvent(event);
+        return delivered;
+    }
+}
@@ -0,0 +1,264 @@
+package de.kartax.awslauncher.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Local stand-in for the EC2, Step Functions and Budgets endpoints, just enough for the SDK clients of the app.
+ * EC2 speaks the query protocol with XML responses, Step Functions and Budgets speak JSON and are told apart
+ * by their {@code X-Amz-Target} header. Every call waits the configured latency plus up to half of it as jitter,
+ * and is throttled at the configured rate the way AWS throttles.
+ */
+public class FakeAws implements AutoCloseable {
+
+    private static final String EC2_NAMESPACE = "http://ec2.amazonaws.com/doc/2016-11-15/";
+    private static final Instant EPOCH = Instant.parse("2024-01-01T00:00:00Z");
+    private static final List<String> INSTANCE_TYPES = List.of("g4dn.xlarge", "g4dn.2xlarge", "g5.xlarge", "g5.2xlarge");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int instances;
+    private final int volumes;
+    private final int snapshots;
+    private final long latencyMillis;
+    private final double throttleRate;
+    private final Map<Integer, String> instanceStates = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> throttled = new ConcurrentHashMap<>();
+    private final AtomicLong executions = new AtomicLong();
+
+    public FakeAws(int instances, int volumes, int snapshots, long latencyMillis, double throttleRate) throws IOException {
+        this.instances = instances;
+        this.volumes = volumes;
+        this.snapshots = snapshots;
+        this.latencyMillis = latencyMillis;
+        this.throttleRate = throttleRate;
+        this.executor = Executors.newFixedThreadPool(64);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    public void setInstanceState(int index, String state) {
+        instanceStates.put(index, state);
+    }
+
+    /**
+     * Calls per operation, sorted by name.
+     */
+    public Map<String, Long> calls() {
+        Map<String, Long> counts = new TreeMap<>();
+        calls.forEach((operation, count) -> counts.put(operation, count.sum()));
+        return counts;
+    }
+
+    public Map<String, Long> throttledCalls() {
+        Map<String, Long> counts = new TreeMap<>();
+        throttled.forEach((operation, count) -> counts.put(operation, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            String operation = target != null ? target.substring(target.indexOf('.') + 1) : formParameters(body).get("Action");
+            calls.computeIfAbsent(operation, key -> new LongAdder()).increment();
+            simulateLatency();
+            if (ThreadLocalRandom.current().nextDouble() < throttleRate) {
+                throttled.computeIfAbsent(operation, key -> new LongAdder()).increment();
+                if (target != null) {
+                    respond(exchange, 400, "application/x-amz-json-1.1", "{\"__type\":\"ThrottlingException\",\"message\":\"Rate exceeded\"}");
+                } else {
+                    respond(exchange, 503, "text/xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response><Errors><Error>"
+                            + "<Code>RequestLimitExceeded</Code><Message>Request limit exceeded.</Message></Error></Errors>"
+                            + "<RequestID>fake</RequestID></Response>");
+                }
+                return;
+            }
+            if (target != null && target.startsWith("AWSBudgetServiceGateway.")) {
+                respond(exchange, 200, "application/x-amz-json-1.1", budgets(operation));
+            } else if (target != null && target.startsWith("AWSStepFunctions.")) {
+                respond(exchange, 200, "application/x-amz-json-1.0", stepFunctions(operation));
+            } else {
+                respond(exchange, 200, "text/xml", ec2(operation, formParameters(body)));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void simulateLatency() {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMillis + ThreadLocalRandom.current().nextLong(latencyMillis / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String budgets(String operation) {
+        if (!"DescribeBudgets".equals(operation)) {
+            return "{}";
+        }
+        return "{\"Budgets\":[{\"BudgetName\":\"max monthly\",\"BudgetType\":\"COST\",\"TimeUnit\":\"MONTHLY\","
+                + "\"BudgetLimit\":{\"Amount\":\"50.0\",\"Unit\":\"USD\"},"
+                + "\"CalculatedSpend\":{\"ActualSpend\":{\"Amount\":\"12.34\",\"Unit\":\"USD\"}}}]}";
+    }
+
+    private String stepFunctions(String operation) {
+        double now = Instant.now().toEpochMilli() / 1000.0;
+        return switch (operation) {
+            case "StartExecution" -> "{\"executionArn\":\"arn:aws:states:eu-central-1:123456789012:execution:launch:"
+                    + executions.incrementAndGet() + "\",\"startDate\":" + now + "}";
+            case "GetExecutionHistory" -> "{\"events\":["
+                    + "{\"id\":2,\"type\":\"ExecutionSucceeded\",\"timestamp\":" + now + "},"
+                    + "{\"id\":1,\"type\":\"ExecutionStarted\",\"timestamp\":" + (now - 60) + "}]}";
+            default -> "{}";
+        };
+    }
+
+    private String ec2(String operation, Map<String, String> parameters) {
+        String items = switch (operation) {
+            case "DescribeInstances" -> page(parameters, "reservationSet", instances, this::reservation);
+            case "DescribeVolumes" -> page(parameters, "volumeSet", volumes, FakeAws::volume);
+            case "DescribeSnapshots" -> page(parameters, "snapshotSet", snapshots, FakeAws::snapshot);
+            case "DescribeInstanceTypes" -> page(parameters, "instanceTypeSet", INSTANCE_TYPES.size(), FakeAws::instanceType);
+            case "DescribeSpotPriceHistory" -> spotPrices(parameters);
+            case "DescribeImages" -> "<imagesSet/>";
+            case "RunInstances" -> "<reservationId>r-fake</reservationId><instancesSet><item><instanceId>i-launched</instanceId>"
+                    + "</item></instancesSet>";
+            default -> "<return>true</return>";
+        };
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><" + operation + "Response xmlns=\"" + EC2_NAMESPACE + "\">"
+                + "<requestId>fake</requestId>" + items + "</" + operation + "Response>";
+    }
+
+    /**
+     * Serves {@code MaxResults} items from the offset in {@code NextToken}.
+     */
+    private static String page(Map<String, String> parameters, String set, int count, IntFunction<String> item) {
+        int start = Integer.parseInt(parameters.getOrDefault("NextToken", "0"));
+        int size = Integer.parseInt(parameters.getOrDefault("MaxResults", "1000"));
+        int end = Math.min(count, start + size);
+        var xml = new StringBuilder("<").append(set).append('>');
+        for (int i = start; i < end; i++) {
+            xml.append(item.apply(i));
+        }
+        xml.append("</").append(set).append('>');
+        if (end < count) {
+            xml.append("<nextToken>").append(end).append("</nextToken>");
+        }
+        return xml.toString();
+    }
+
+    private String reservation(int i) {
+        String state = instanceStates.getOrDefault(i, "stopped");
+        int code = switch (state) {
+            case "pending" -> 0;
+            case "running" -> 16;
+            case "shutting-down" -> 32;
+            case "terminated" -> 48;
+            case "stopping" -> 64;
+            default -> 80;
+        };
+        return "<item><reservationId>r-" + i + "</reservationId><ownerId>123456789012</ownerId><instancesSet><item>"
+                + "<instanceId>" + String.format("i-%017x", i) + "</instanceId>"
+                + "<instanceType>" + INSTANCE_TYPES.get(i % INSTANCE_TYPES.size()) + "</instanceType>"
+                + "<instanceState><code>" + code + "</code><name>" + state + "</name></instanceState>"
+                + "<launchTime>" + EPOCH.plusSeconds(i * 3600L) + "</launchTime>"
+                + tags("GamingRig") + "</item></instancesSet></item>";
+    }
+
+    private static String volume(int i) {
+        return "<item><volumeId>" + String.format("vol-%017x", i) + "</volumeId><size>300</size>"
+                + "<availabilityZone>eu-central-1a</availabilityZone><status>in-use</status>"
+                + "<createTime>" + EPOCH.plusSeconds(i * 60L) + "</createTime>" + tags("GamingRig") + "</item>";
+    }
+
+    private static String snapshot(int i) {
+        return "<item><snapshotId>" + String.format("snap-%017x", i) + "</snapshotId>"
+                + "<volumeId>" + String.format("vol-%017x", i % 1000) + "</volumeId><status>completed</status>"
+                + "<startTime>" + EPOCH.plusSeconds(i * 3600L) + "</startTime><progress>100%</progress>"
+                + "<volumeSize>300</volumeSize>" + tags("GamingRig") + "</item>";
+    }
+
+    private static String instanceType(int i) {
+        int vCpus = i % 2 == 0 ? 4 : 8;
+        return "<item><instanceType>" + INSTANCE_TYPES.get(i) + "</instanceType>"
+                + "<vCpuInfo><defaultVCpus>" + vCpus + "</defaultVCpus></vCpuInfo>"
+                + "<memoryInfo><sizeInMiB>" + vCpus * 4096 + "</sizeInMiB></memoryInfo>"
+                + "<gpuInfo><gpus><item><count>1</count></item></gpus></gpuInfo></item>";
+    }
+
+    private static String spotPrices(Map<String, String> parameters) {
+        var xml = new StringBuilder("<spotPriceHistorySet>");
+        Instant now = Instant.now();
+        for (int n = 1; parameters.containsKey("InstanceType." + n); n++) {
+            String instanceType = parameters.get("InstanceType." + n);
+            for (String zone : List.of("eu-central-1a", "eu-central-1b")) {
+                xml.append("<item><instanceType>").append(instanceType).append("</instanceType>")
+                        .append("<productDescription>Windows</productDescription>")
+                        .append("<spotPrice>").append(String.format("%.4f", 0.2 + 0.1 * n + (zone.endsWith("b") ? 0.01 : 0))).append("</spotPrice>")
+                        .append("<timestamp>").append(now).append("</timestamp>")
+                        .append("<availabilityZone>").append(zone).append("</availabilityZone></item>");
+            }
+        }
+        return xml.append("</spotPriceHistorySet>").toString();
+    }
+
+    private static String tags(String name) {
+        return "<tagSet><item><key>Name</key><value>" + name + "</value></item></tagSet>";
+    }
+
+    private static Map<String, String> formParameters(String body) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : body.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("x-amzn-RequestId", "fake");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -0,0 +1,141 @@
+package de.kartax.awslauncher.load;
+
+import de.kartax.awslauncher.AwsLauncherApplication;
+import de.kartax.awslauncher.aws.AwsBackgroundTask;
+import de.kartax.awslauncher.aws.AwsStateCache;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Capacity test of one node: starts the app against {@link FakeAws}, attaches simulated dashboard sessions and
+ * changes an instance once per round. Each round refreshes like a poll would and waits until every session has
+ * seen the change. Reports refresh time and push latency percentiles, heap per session and the AWS calls made.
+ * <p>
+ * Configured with system properties, e.g. {@code ./gradlew loadTest -PloadTest.sessions=1000 -PloadTest.snapshots=5000}:
+ * sessions, rounds, instances, volumes, snapshots, latencyMillis and throttleRate.
+ */
+public class LoadTest {
+
+    private static final String PROBE_INSTANCE_ID = String.format("i-%017x", 0);
+
+    record Round(int number, String expectedState, long startNanos, CountDownLatch latch, ConcurrentLinkedQueue<Long> latencies) {
+
+        void seen() {
+            latencies.add(System.nanoTime() - startNanos);
+            latch.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = Integer.getInteger("loadTest.sessions", 500);
+        int rounds = Integer.getInteger("loadTest.rounds", 20);
+        int instances = Integer.getInteger("loadTest.instances", 5);
+        int volumes = Integer.getInteger("loadTest.volumes", 50);
+        int snapshots = Integer.getInteger("loadTest.snapshots", 500);
+        long latencyMillis = Long.getLong("loadTest.latencyMillis", 50);
+        double throttleRate = Double.parseDouble(System.getProperty("loadTest.throttleRate", "0.02"));
+
+        Path dir = Files.createTempDirectory("load-test");
+        try (var fake = new FakeAws(instances, volumes, snapshots, latencyMillis, throttleRate);
+             var context = start(fake, dir)) {
+            var stateCache = context.getBean(AwsStateCache.class);
+            var eventService = context.getBean(DashboardEventService.class);
+            var backgroundTask = context.getBean(AwsBackgroundTask.class);
+
+            // the poll at startup fills the cache
+            while (stateCache.getState().instances() == null) {
+                Thread.sleep(100);
+            }
+            long heapBefore = usedHeap();
+
+            AtomicReference<Round> current = new AtomicReference<>();
+            for (int i = 0; i < sessions; i++) {
+                eventService.register(new SimulatedSession(stateCache.getState(), PROBE_INSTANCE_ID, current::get));
+            }
+
+            List<Long> refreshNanos = new ArrayList<>();
+            List<Long> pushNanos = new ArrayList<>();
+            int missed = 0;
+            for (int r = 1; r <= rounds; r++) {
+                String state = r % 2 == 1 ? "running" : "stopped";
+                var round = new Round(r, state, System.nanoTime(), new CountDownLatch(sessions), new ConcurrentLinkedQueue<>());
+                current.set(round);
+                fake.setInstanceState(0, state);
+                backgroundTask.refresh().join();
+                refreshNanos.add(System.nanoTime() - round.startNanos());
+                if (!round.latch().await(30, TimeUnit.SECONDS)) {
+                    missed += (int) round.latch().getCount();
+                }
+                pushNanos.addAll(round.latencies());
+            }
+            long heapAfter = usedHeap();
+
+            System.out.printf("%d sessions, %d rounds, %d instances / %d volumes / %d snapshots, %d ms latency, %.0f%% throttled%n",
+                    sessions, rounds, instances, volumes, snapshots, latencyMillis, throttleRate * 100);
+            System.out.println("refresh " + percentiles(refreshNanos));
+            System.out.println("push    " + percentiles(pushNanos) + (missed > 0 ? ", " + missed + " updates missed" : ""));
+            System.out.printf("heap    %d MB before sessions, %d MB after, %.1f KB per session%n",
+                    heapBefore >> 20, heapAfter >> 20, (heapAfter - heapBefore) / 1024.0 / sessions);
+            Map<String, Long> throttled = fake.throttledCalls();
+            fake.calls().forEach((operation, count) -> System.out.printf("calls   %-28s %6d%s%n", operation, count,
+                    throttled.containsKey(operation) ? " (" + throttled.get(operation) + " throttled)" : ""));
+        }
+        System.exit(0);
+    }
+
+    private static ConfigurableApplicationContext start(FakeAws fake, Path dir) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("aws.endpointOverride", fake.endpoint().toString());
+        properties.put("aws.accessKeyId", "fake");
+        properties.put("aws.secretAccessKey", "fake");
+        properties.put("aws.stateFile", dir.resolve("dashboard-state.bin").toString());
+        properties.put("aws.spotHistoryFile", dir.resolve("spot-prices.bin").toString());
+        properties.put("aws.catalogFile", dir.resolve("instance-types.txt").toString());
+        properties.put("aws.costHistoryFile", dir.resolve("cost-history.bin").toString());
+        properties.put("activity.file", dir.resolve("logMessages.txt").toString());
+        // the rounds refresh on their own
+        properties.put("aws.pollIdleSeconds", "3600");
+        properties.put("aws.pollMaxSeconds", "3600");
+        properties.put("logging.level.de.kartax", "info");
+        properties.put("spring.main.banner-mode", "off");
+        return new SpringApplicationBuilder(AwsLauncherApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(properties)
+                .run();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static String percentiles(List<Long> nanos) {
+        if (nanos.isEmpty()) {
+            return "no samples";
+        }
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        return String.format("p50 %d ms, p95 %d ms, p99 %d ms, max %d ms (%d samples)",
+                millis(sorted, 50), millis(sorted, 95), millis(sorted, 99), sorted.get(sorted.size() - 1) / 1_000_000, sorted.size());
+    }
+
+    private static long millis(List<Long> sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1)) / 1_000_000;
+    }
+}
@@ -0,0 +1,54 @@
+package de.kartax.awslauncher.load;
+
+import de.kartax.awslauncher.aws.AwsState;
+import de.kartax.awslauncher.dashboard.DashboardListener;
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Stands in for one open dashboard: starts from the cached state like a newly attached view, keeps its own
+ * copy of the instances up to date from the pushed updates, and reports when it first sees the state a
+ * round is waiting for. Rendering and the websocket push of a real view are not part of the measurement.
+ */
+class SimulatedSession implements DashboardListener {
+
+    private final String probeInstanceId;
+    private final Supplier<LoadTest.Round> currentRound;
+    private final Map<String, String> instanceStates = new HashMap<>();
+    private int seenRound;
+
+    SimulatedSession(AwsState attachedState, String probeInstanceId, Supplier<LoadTest.Round> currentRound) {
+        this.probeInstanceId = probeInstanceId;
+        this.currentRound = currentRound;
+        if (attachedState.instances() != null) {
+            put(attachedState.instances());
+        }
+    }
+
+    @Override
+    public synchronized void handleUpdate(DashboardUpdateEvent event) {
+        if (event.getInstances() != null) {
+            instanceStates.clear();
+            put(event.getInstances());
+        }
+        if (event.getInstanceChanges() != null) {
+            put(event.getInstanceChanges().getAdded());
+            put(event.getInstanceChanges().getChanged());
+            event.getInstanceChanges().getRemoved().forEach(instanceStates::remove);
+        }
+        LoadTest.Round round = currentRound.get();
+        if (round != null && seenRound < round.number() && round.expectedState().equals(instanceStates.get(probeInstanceId))) {
+            seenRound = round.number();
+            round.seen();
+        }
+    }
+
+    private void put(List<Instance> instances) {
+        instances.forEach(instance -> instanceStates.put(instance.instanceId(), instance.state().nameAsString()));
+    }
+}
@@ -0,0 +1,7 @@
+package de.kartax.awslauncher.activity;
+
+/**
+ * One line of the activity log. Sequence numbers increase by one per entry and let views read from where they left off.
+ */
+public record ActivityEntry(long sequence, String text) {
+}
@@ -0,0 +1,155 @@
+package de.kartax.awslauncher.activity;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Application-wide activity log shared by all views. Entries are kept in a fixed-size ring in memory
+ * and appended to a log file, which is rolled over to a single previous segment once it reaches its size limit.
+ */
+@Slf4j
+@Component
+public class ActivityLog {
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyy - HH:mm:ss");
+
+    private final Path file;
+    private final Path previousFile;
+    private final long maxSegmentBytes;
+    private final ActivityEntry[] ring;
+    private long nextSequence = 1;
+    private FileChannel channel;
+
+    public ActivityLog(@Value("${activity.file}") String file,
+                       @Value("${activity.retention}") int retention,
+                       @Value("${activity.maxSegmentBytes}") long maxSegmentBytes) {
+        this.file = Paths.get(file);
+        this.previousFile = this.file.resolveSibling(this.file.getFileName() + ".1");
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.ring = new ActivityEntry[retention];
+        load();
+        try {
+            open();
+        } catch (IOException e) {
+            log.error("Error opening activity log, keeping entries in memory only", e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Error closing activity log", e);
+            }
+            channel = null;
+        }
+    }
+
+    public synchronized ActivityEntry append(String message) {
+        String text = String.format("%s : %s", LocalDateTime.now().format(TIMESTAMP_FORMATTER), message.replace('\n', ' '));
+        ActivityEntry entry = remember(text);
+        write(text);
+        return entry;
+    }
+
+    /**
+     * Returns the retained entries after the given sequence number, oldest first.
+     */
+    public synchronized List<ActivityEntry> tail(long afterSequence) {
+        long first = Math.max(afterSequence + 1, Math.max(1, nextSequence - ring.length));
+        List<ActivityEntry> entries = new ArrayList<>((int) Math.max(0, nextSequence - first));
+        for (long sequence = first; sequence < nextSequence; sequence++) {
+            entries.add(ring[slot(sequence)]);
+        }
+        return entries;
+    }
+
+    public synchronized List<ActivityEntry> recent(int count) {
+        return tail(nextSequence - 1 - count);
+    }
+
+    public synchronized long latestSequence() {
+        return nextSequence - 1;
+    }
+
+    public int getRetention() {
+        return ring.length;
+    }
+
+    private ActivityEntry remember(String text) {
+        ActivityEntry entry = new ActivityEntry(nextSequence++, text);
+        ring[slot(entry.sequence())] = entry;
+        return entry;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+
+    private void load() {
+        Deque<String> lines = new ArrayDeque<>(ring.length);
+        for (Path segment : List.of(previousFile, file)) {
+            if (!Files.exists(segment)) {
+                continue;
+            }
+            try {
+                for (String line : Files.readAllLines(segment)) {
+                    if (lines.size() == ring.length) {
+                        lines.removeFirst();
+                    }
+                    lines.addLast(line);
+                }
+            } catch (IOException e) {
+                log.error("Error loading activity log {}", segment, e);
+            }
+        }
+        lines.forEach(this::remember);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void write(String text) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (channel.size() >= maxSegmentBytes) {
+                rollOver();
+            }
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(text + "\n");
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            log.error("Error writing activity log", e);
+        }
+    }
+
+    private void rollOver() throws IOException {
+        channel.close();
+        Files.move(file, previousFile, StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+}
@@ -4,12 +4,15 @@ package de.kartax.awslauncher.aws;
 import de.kartax.awslauncher.config.AwsConfig;
 import de.kartax.awslauncher.dashboard.DashboardEventService;
 import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
-import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.services.budgets.BudgetsClient;
-import software.amazon.awssdk.services.budgets.model.DescribeBudgetsRequest;
-import software.amazon.awssdk.services.budgets.model.DescribeBudgetsResponse;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.*;
 import org.springframework.scheduling.TaskScheduler;
@@ -18,13 +21,29 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -34,151 +53,490 @@ public class AwsBackgroundTask {
     private final DashboardEventService eventService;
     private final Ec2Client ec2Client;
     private final AwsConfig awsConfig;
-    private final BudgetsClient budgetsClient;
+    private final CostTracker costTracker;
+    private final AwsStateCache stateCache;
+    private final SpotPriceHistory spotPriceHistory;
+    private final InstanceTypeCatalog instanceTypeCatalog;
+    private final AwsStateFile stateFile;
+    private final FastLaunch fastLaunch;
+    private final SnapshotLifecycle snapshotLifecycle;
+    private final ResourceScope scope;
+    private final MeterRegistry meterRegistry;
 
-    Map<String, Double> instanceSpotPrices = Map.of(
-            "g4dn.xlarge", 0.29,
-            "g4dn.2xlarge", 0.50,
-            "g6.2xlarge", 0.55,
-            "g5.2xlarge", 0.57);
+    private final Ec2ClientRegistry clientRegistry;
+    private final ClusterSync clusterSync;
+    private final ExecutorService refreshExecutor;
+    private final ExecutorService pollExecutor;
+    private final ExecutorService reconcileExecutor;
+
+    private static final Duration SPOT_PRICE_SUGGESTION_WINDOW = Duration.ofHours(24);
+    private static final int SPOT_PRICE_BATCH_SIZE = 20;
+
+    private static final Set<InstanceStateName> TRANSITIONAL_INSTANCE_STATES = EnumSet.of(
+            InstanceStateName.PENDING,
+            InstanceStateName.STOPPING,
+            InstanceStateName.SHUTTING_DOWN);
+
+    private final AtomicReference<InFlightRefresh> inFlight = new AtomicReference<>();
 
     private ScheduledFuture<?> scheduledFuture;
+    private Duration idleDelay;
 
+    private record InFlightRefresh(Set<RefreshSection> sections, CompletableFuture<AwsState> result) {
+    }
 
-    public AwsBackgroundTask(TaskScheduler taskScheduler, DashboardEventService eventService, Ec2Client ec2Client, AwsConfig awsConfig, BudgetsClient budgetsClient) {
+    private record TargetResult<T>(AwsTarget target, List<T> items, Throwable error) {
+    }
+
+
+    public AwsBackgroundTask(TaskScheduler taskScheduler, DashboardEventService eventService, @Lazy Ec2Client ec2Client, AwsConfig awsConfig, CostTracker costTracker, AwsStateCache stateCache, SpotPriceHistory spotPriceHistory, InstanceTypeCatalog instanceTypeCatalog, AwsStateFile stateFile, FastLaunch fastLaunch, SnapshotLifecycle snapshotLifecycle, ResourceScope scope, Ec2ClientRegistry clientRegistry, ClusterSync clusterSync, MeterRegistry meterRegistry) {
         this.taskScheduler = taskScheduler;
         this.eventService = eventService;
         this.ec2Client = ec2Client;
         this.awsConfig = awsConfig;
-        this.budgetsClient = budgetsClient;
+        this.costTracker = costTracker;
+        this.stateCache = stateCache;
+        this.spotPriceHistory = spotPriceHistory;
+        this.instanceTypeCatalog = instanceTypeCatalog;
+        this.stateFile = stateFile;
+        this.fastLaunch = fastLaunch;
+        this.snapshotLifecycle = snapshotLifecycle;
+        this.scope = scope;
+        this.clientRegistry = clientRegistry;
+        this.clusterSync = clusterSync;
+        this.meterRegistry = meterRegistry;
+        this.refreshExecutor = Executors.newFixedThreadPool(awsConfig.getRefreshThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "aws-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // polls wait for their refresh here, so the shared scheduler stays free for launch and snapshot tracking
+        this.pollExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "aws-poll");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the AMI and backup reconciles block on AWS calls of their own, they must not take refresh threads
+        this.reconcileExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "aws-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    @PostConstruct
+    @EventListener(ApplicationReadyEvent.class)
     public void start() {
-        scheduleHourlyTask();
+        idleDelay = Duration.ofSeconds(awsConfig.getPollIdleSeconds());
+        clusterSync.onRefreshRequest(this::runOnceDelayed);
+        clusterSync.onLeadership(() -> runOnceDelayed(Duration.ZERO));
+        taskScheduler.schedule(this::restoreState, Instant.now());
+        scheduleNextPoll(Duration.ZERO, EnumSet.allOf(RefreshSection.class));
+    }
+
+    private void restoreState() {
+        stateFile.load().ifPresent(restored -> {
+            if (stateCache.restore(restored)) {
+                log.info("Restored dashboard state from {}", restored.refreshedAt());
+                eventService.broadcastEvent(restored.toEvent(this));
+            }
+        });
     }
 
-    private void scheduleHourlyTask() {
-        log.debug("scheduleHourlyTask");
+    @PreDestroy
+    public void stop() {
+        pollExecutor.shutdownNow();
+        refreshExecutor.shutdownNow();
+        reconcileExecutor.shutdownNow();
+    }
+
+    private synchronized void scheduleNextPoll(Duration delay, Set<RefreshSection> sections) {
+        log.debug("scheduleNextPoll in {} for {}", delay, sections);
         if (scheduledFuture != null) {
             scheduledFuture.cancel(false);
         }
-        scheduledFuture = taskScheduler.scheduleAtFixedRate(this::run, Duration.ofHours(1));
+        scheduledFuture = taskScheduler.schedule(() -> pollExecutor.execute(() -> poll(sections)), Instant.now().plus(delay));
+    }
+
+    /**
+     * Polls quickly while resources are in transition, only refreshing the sections that are changing.
+     * Once everything is stable, polls the whole account with an exponentially growing interval.
+     */
+    private void poll(Set<RefreshSection> sections) {
+        if (!clusterSync.isLeader()) {
+            // the leader polls for the whole cluster, keep checking in case this node takes over
+            scheduleNextPoll(Duration.ofSeconds(awsConfig.getPollIdleSeconds()), EnumSet.allOf(RefreshSection.class));
+            return;
+        }
+        Set<RefreshSection> changing = EnumSet.noneOf(RefreshSection.class);
+        try {
+            changing = changingSections(refresh(sections).join(), snapshotLifecycle::isTracking);
+        } catch (CompletionException e) {
+            // already logged by the refresh, poll again at the idle interval
+            log.debug("Poll of {} failed", sections);
+        } finally {
+            if (!changing.isEmpty()) {
+                resetBackoff(Duration.ofSeconds(awsConfig.getPollIdleSeconds()));
+                scheduleNextPoll(Duration.ofSeconds(awsConfig.getPollFastSeconds()), changing);
+            } else {
+                scheduleNextPoll(nextIdleDelay(), EnumSet.allOf(RefreshSection.class));
+            }
+        }
+    }
+
+    synchronized void resetBackoff(Duration delay) {
+        idleDelay = delay;
     }
 
+    synchronized Duration nextIdleDelay() {
+        Duration delay = idleDelay;
+        Duration max = Duration.ofSeconds(awsConfig.getPollMaxSeconds());
+        idleDelay = idleDelay.multipliedBy(2).compareTo(max) > 0 ? max : idleDelay.multipliedBy(2);
+        return delay;
+    }
+
+    /**
+     * Sections with resources in transition. Snapshots whose progress {@link SnapshotLifecycle} polls itself are left out.
+     */
+    static Set<RefreshSection> changingSections(AwsState state, Predicate<String> trackedSnapshot) {
+        Set<RefreshSection> changing = EnumSet.noneOf(RefreshSection.class);
+        if (state.instances() != null && state.instances().stream().anyMatch(instance ->
+                TRANSITIONAL_INSTANCE_STATES.contains(instance.state().name()))) {
+            changing.add(RefreshSection.INSTANCES);
+        }
+        if (state.volumes() != null && state.volumes().stream().anyMatch(volume ->
+                volume.state() == VolumeState.CREATING || volume.state() == VolumeState.DELETING)) {
+            changing.add(RefreshSection.VOLUMES);
+        }
+        if (state.snapshots() != null && state.snapshots().stream().anyMatch(snapshot ->
+                snapshot.state() == SnapshotState.PENDING && !"100%".equals(snapshot.progress())
+                        && !trackedSnapshot.test(snapshot.snapshotId()))) {
+            changing.add(RefreshSection.SNAPSHOTS);
+        }
+        return changing;
+    }
+
+    /**
+     * Refreshes after the given delay and restarts the backoff from the fast interval,
+     * e.g. after a launch that will only show up in AWS a little later.
+     */
     public void runOnceDelayed(Duration delay) {
         log.debug("runOnceDelayed");
-        if (scheduledFuture != null) {
-            scheduledFuture.cancel(false);
+        if (!clusterSync.isLeader()) {
+            clusterSync.requestRefresh(delay);
+            return;
         }
+        resetBackoff(Duration.ofSeconds(awsConfig.getPollFastSeconds()));
+        scheduleNextPoll(delay, EnumSet.allOf(RefreshSection.class));
+    }
 
-        // Schedule the single delayed run
-        scheduledFuture = taskScheduler.schedule(() -> {
-            // Run the task once
-            run();
-            // Reschedule the regular task after the single run
-            scheduleHourlyTask();
-        }, Instant.now().plus(delay));
+    /**
+     * Refreshes in the background, unless the cached state is younger than the configured staleness window.
+     */
+    public void refreshIfStale() {
+        pollExecutor.execute(() -> {
+            if (stateCache.isStale(Duration.ofSeconds(awsConfig.getRefreshStaleAfterSeconds()))) {
+                refresh();
+            }
+        });
     }
 
     public void run() {
-        log.debug("run");
-        var event = new DashboardUpdateEvent(this);
-        try {
-            event.setInstances(getAllInstances());
-        } catch (Ec2Exception e) {
-            event.appendMessage(e.getMessage());
+        refresh().join();
+    }
+
+    public CompletableFuture<AwsState> refresh() {
+        return refresh(EnumSet.allOf(RefreshSection.class));
+    }
+
+    /**
+     * Refreshes the given sections. Concurrent callers share a refresh already in flight if it covers their sections.
+     * Nodes that are not the cluster leader ask the leader to refresh instead.
+     *
+     * @return completes with the refreshed state, or exceptionally if the refresh failed
+     */
+    public CompletableFuture<AwsState> refresh(Set<RefreshSection> sections) {
+        if (!clusterSync.isLeader()) {
+            // the result arrives through the cluster sync like any other update
+            clusterSync.requestRefresh(Duration.ZERO);
+            return CompletableFuture.completedFuture(stateCache.getState());
         }
-        try {
-            event.setVolumes(getAllVolumes());
-        } catch (Ec2Exception e) {
-            event.appendMessage(e.getMessage());
+        var pending = new InFlightRefresh(sections, new CompletableFuture<>());
+        var running = inFlight.compareAndExchange(null, pending);
+        if (running != null) {
+            if (running.sections().containsAll(sections)) {
+                log.debug("joining refresh in flight");
+                return running.result();
+            }
+            return running.result().thenCompose(state -> refresh(sections));
         }
+        AwsState state = null;
+        Throwable failure = null;
         try {
-            event.setSnapshots(getAllSnapshots());
-        } catch (Ec2Exception e) {
-            event.appendMessage(e.getMessage());
+            state = refreshSections(sections);
+        } catch (Throwable e) {
+            log.error("Error refreshing", e);
+            failure = e;
+        } finally {
+            // clear before completing, so callers waiting for a wider refresh can start their own
+            inFlight.set(null);
         }
-        try {
-            event.setCurrentMonthCost(getCurrentMonthCost());
-        } catch (Exception e) {
-            event.appendMessage(e.getMessage());
+        if (failure != null) {
+            pending.result().completeExceptionally(failure);
+        } else {
+            pending.result().complete(state);
         }
-        try {
-            event.setInstanceTypesWithPrice(getInstanceTypesWithPrice());
-        } catch (Exception e) {
-            event.appendMessage(e.getMessage());
+        return pending.result();
+    }
+
+    private AwsState refreshSections(Set<RefreshSection> sections) {
+        log.debug("run {}", sections);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        var event = new DashboardUpdateEvent(this);
+        List<String> targetErrors = new CopyOnWriteArrayList<>();
+
+        // fan out all sections (and targets) at once, so a refresh takes as long as the slowest call
+        var instances = sections.contains(RefreshSection.INSTANCES)
+                ? fetchFromTargets(RefreshSection.INSTANCES, this::getAllInstances, AwsState::instances, Instance::tags, targetErrors)
+                : null;
+        var volumes = sections.contains(RefreshSection.VOLUMES)
+                ? fetchFromTargets(RefreshSection.VOLUMES, this::getAllVolumes, AwsState::volumes, Volume::tags, targetErrors)
+                : null;
+        var snapshots = sections.contains(RefreshSection.SNAPSHOTS)
+                ? fetchFromTargets(RefreshSection.SNAPSHOTS, this::getAllSnapshots, AwsState::snapshots, Snapshot::tags, targetErrors)
+                : null;
+        var budget = sections.contains(RefreshSection.COST) ? fetch(RefreshSection.COST, this::refreshBudget) : null;
+        var instanceTypesWithPrice = sections.contains(RefreshSection.PRICES) ? fetch(RefreshSection.PRICES, this::getInstanceTypesWithPrice) : null;
+
+        collect(RefreshSection.INSTANCES, instances, event::setInstances, event);
+        collect(RefreshSection.VOLUMES, volumes, event::setVolumes, event);
+        collect(RefreshSection.SNAPSHOTS, snapshots, event::setSnapshots, event);
+        collect(RefreshSection.COST, budget, done -> { }, event);
+        if (budget != null || event.getInstances() != null) {
+            // running instances count towards the spend, no need to wait for the next Budgets update
+            List<Instance> running = event.getInstances() != null ? event.getInstances() : stateCache.getState().instances();
+            event.setCurrentMonthCost(costTracker.currentMonthCost(running));
+        }
+        collect(RefreshSection.PRICES, instanceTypesWithPrice, event::setInstanceTypesWithPrice, event);
+        targetErrors.forEach(event::appendMessage);
+
+        boolean complete = sections.containsAll(EnumSet.allOf(RefreshSection.class));
+        sample.stop(meterRegistry.timer("aws.refresh", "scope", complete ? "full" : "partial"));
+        eventService.broadcastEvent(complete ? stateCache.update(event) : stateCache.patch(current -> event));
+        AwsState state = stateCache.getState();
+        if (complete) {
+            stateFile.save(state);
         }
-        eventService.broadcastEvent(event);
+        if (event.getSnapshots() != null) {
+            // the cached AMI lives in the home region, snapshots of other targets must not replace it
+            List<Snapshot> homeSnapshots = event.getSnapshots().stream()
+                    .filter(snapshot -> AwsTarget.isHome(snapshot.tags(), awsConfig.getAwsRegion()))
+                    .toList();
+            reconcileExecutor.execute(() -> fastLaunch.reconcile(homeSnapshots));
+        }
+        if (event.getVolumes() != null) {
+            reconcileExecutor.execute(snapshotLifecycle::reconcile);
+        }
+        return state;
     }
 
-    public List<Instance> getAllInstances() {
-        log.debug("getAllInstances");
-        DescribeInstancesRequest request = DescribeInstancesRequest.builder().build();
+    private <T> CompletableFuture<T> fetch(RefreshSection section, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return supplyTimed(call)
+                .whenComplete((result, error) -> sample.stop(meterRegistry.timer("aws.refresh.section",
+                        "section", section.name().toLowerCase(), "outcome", outcome(error))));
+    }
 
-        return ec2Client.describeInstancesPaginator(request)
-                .stream()
-                .flatMap(response -> response.reservations().stream())
-                .flatMap(reservation -> reservation.instances().stream())
-                .collect(Collectors.toList());
+    /**
+     * Fetches a section from every target in parallel. A target that fails or times out keeps the resources
+     * it had before, so one slow or throttled region does not blank or hold up the others.
+     */
+    private <T> CompletableFuture<List<T>> fetchFromTargets(RefreshSection section, Function<AwsTarget, List<T>> call,
+                                                            Function<AwsState, List<T>> previous, Function<T, List<Tag>> tagsOf,
+                                                            List<String> errors) {
+        List<AwsTarget> targets = clientRegistry.targets();
+        if (!clientRegistry.isMultiTarget()) {
+            return fetch(section, () -> call.apply(targets.get(0)));
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        List<CompletableFuture<TargetResult<T>>> futures = targets.stream()
+                .map(target -> supplyTimed(() -> clientRegistry.withPermit(target, () -> call.apply(target)))
+                        .handle((items, error) -> new TargetResult<>(target, items, error)))
+                .toList();
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            List<T> merged = new ArrayList<>();
+            int failed = 0;
+            for (var future : futures) {
+                TargetResult<T> result = future.join();
+                if (result.error() == null) {
+                    merged.addAll(result.items());
+                    continue;
+                }
+                failed++;
+                String label = result.target().label();
+                errors.add(outcome(result.error()).equals("timeout")
+                        ? "Refreshing " + section.label() + " in " + label + " timed out after " + awsConfig.getRefreshTimeoutSeconds() + "s"
+                        : "Refreshing " + section.label() + " in " + label + " failed: " + rootCause(result.error()).getMessage());
+                List<T> known = previous.apply(stateCache.getState());
+                if (known != null) {
+                    known.stream().filter(item -> label.equals(AwsTarget.labelOf(tagsOf.apply(item)))).forEach(merged::add);
+                }
+            }
+            sample.stop(meterRegistry.timer("aws.refresh.section", "section", section.name().toLowerCase(),
+                    "outcome", failed == 0 ? "success" : failed < targets.size() ? "partial" : "error"));
+            return merged;
+        });
     }
 
-    public List<Volume> getAllVolumes() {
-        log.debug("getAllVolumes");
-        DescribeVolumesRequest request = DescribeVolumesRequest.builder().build();
+    /**
+     * Runs the call on a refresh thread. The timeout starts once the call runs, so waiting in the queue
+     * behind other sections does not count, and a call that times out is interrupted to free its thread.
+     * The SDK's own {@code aws.apiCallTimeoutSeconds} normally ends a hung call before that.
+     */
+    private <T> CompletableFuture<T> supplyTimed(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = refreshExecutor.submit(() -> {
+            result.orTimeout(awsConfig.getRefreshTimeoutSeconds(), TimeUnit.SECONDS);
+            try {
+                result.complete(call.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (rootCause(error) instanceof TimeoutException) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
 
-        return ec2Client.describeVolumesPaginator(request)
-                .stream()
-                .flatMap(response -> response.volumes().stream())
-                .collect(Collectors.toList());
+    private static Throwable rootCause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
 
-    public List<Snapshot> getAllSnapshots() {
-        log.debug("getAllSnapshots");
-        DescribeSnapshotsRequest request = DescribeSnapshotsRequest.builder().ownerIds("self").build();
+    private static String outcome(Throwable error) {
+        Throwable cause = rootCause(error);
+        if (cause == null) {
+            return "success";
+        }
+        return cause instanceof TimeoutException ? "timeout" : "error";
+    }
 
-        return ec2Client.describeSnapshotsPaginator(request)
-                .stream()
-                .flatMap(response -> response.snapshots().stream())
-                .collect(Collectors.toList());
+    /**
+     * Walks all pages and maps their items as each page arrives, so only one page of full SDK models is held
+     * at a time. Records how many pages it took, so growing accounts show up in the metrics.
+     */
+    private <R, T> List<T> collectPages(String operation, Iterable<R> pages, Function<R, Stream<T>> items) {
+        List<T> result = new ArrayList<>();
+        int pageCount = 0;
+        for (R page : pages) {
+            pageCount++;
+            items.apply(page).forEach(result::add);
+        }
+        DistributionSummary.builder("aws.describe.pages")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .record(pageCount);
+        return result;
     }
 
-    public List<BigDecimal> getCurrentMonthCost() {
-        log.debug("getCurrentMonthCost");
-        DescribeBudgetsRequest request = DescribeBudgetsRequest.builder()
-                .accountId(awsConfig.getBudgetAccountId())
+    private <T> void collect(RefreshSection section, CompletableFuture<T> future, Consumer<T> setter, DashboardUpdateEvent event) {
+        if (future == null) {
+            return;
+        }
+        try {
+            setter.accept(future.join());
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                log.debug("Refreshing {} timed out", section.label());
+                event.appendMessage("Refreshing " + section.label() + " timed out after " + awsConfig.getRefreshTimeoutSeconds() + "s");
+            } else {
+                log.debug("Error refreshing {}", section.label(), cause);
+                event.appendMessage(cause.getMessage());
+            }
+        }
+    }
+
+    public List<Instance> getAllInstances(AwsTarget target) {
+        log.debug("getAllInstances {}", target.label());
+        String label = clientRegistry.isMultiTarget() ? target.label() : null;
+        DescribeInstancesRequest request = DescribeInstancesRequest.builder()
+                .filters(scope.instanceFilters())
+                .maxResults(scope.pageSize())
                 .build();
 
-        DescribeBudgetsResponse response = budgetsClient.describeBudgets(request);
+        return collectPages("DescribeInstances", clientRegistry.ec2(target).describeInstancesPaginator(request),
+                response -> response.reservations().stream()
+                        .flatMap(reservation -> reservation.instances().stream())
+                        .map(instance -> LeanResources.instance(instance, label)));
+    }
 
-        return response.budgets().stream()
-                .filter(budget -> budget.budgetName().equals(awsConfig.getBudgetName()))
-                .findFirst().map(budget -> List.of(budget.calculatedSpend().actualSpend().amount(), budget.budgetLimit().amount()))
-                .orElse(List.of(BigDecimal.ZERO, BigDecimal.ZERO));
+    public List<Volume> getAllVolumes(AwsTarget target) {
+        log.debug("getAllVolumes {}", target.label());
+        String label = clientRegistry.isMultiTarget() ? target.label() : null;
+        DescribeVolumesRequest request = DescribeVolumesRequest.builder()
+                .filters(scope.volumeFilters())
+                .maxResults(scope.pageSize())
+                .build();
+
+        return collectPages("DescribeVolumes", clientRegistry.ec2(target).describeVolumesPaginator(request),
+                response -> response.volumes().stream().map(volume -> LeanResources.volume(volume, label)));
     }
 
+    public List<Snapshot> getAllSnapshots(AwsTarget target) {
+        log.debug("getAllSnapshots {}", target.label());
+        String label = clientRegistry.isMultiTarget() ? target.label() : null;
+        DescribeSnapshotsRequest request = DescribeSnapshotsRequest.builder()
+                .ownerIds("self")
+                .filters(scope.snapshotFilters())
+                .maxResults(scope.pageSize())
+                .build();
+
+        return collectPages("DescribeSnapshots", clientRegistry.ec2(target).describeSnapshotsPaginator(request),
+                response -> response.snapshots().stream().map(snapshot -> LeanResources.snapshot(snapshot, label)));
+    }
+
+    private Void refreshBudget() {
+        costTracker.refreshBudget();
+        return null;
+    }
+
+    /**
+     * Suggested max spot price per instance type: the 95th percentile of the last day's prices
+     * in the currently cheapest availability zone, but never below its current price.
+     */
     public Map<String, Double> getInstanceTypesWithPrice() {
         log.debug("getInstanceTypesWithPrice");
-        Map<String, Double> spotPrices = new HashMap<>();
-
-        DescribeSpotPriceHistoryRequest request = DescribeSpotPriceHistoryRequest.builder()
-                .startTime(Instant.now().minus(Duration.ofHours(1)))
-                .endTime(Instant.now())
-                .instanceTypes(
-                        InstanceType.G4_DN_XLARGE,
-                        InstanceType.G4_DN_2_XLARGE,
-                        InstanceType.G6_2_XLARGE,
-                        InstanceType.G5_2_XLARGE)
-                .build();
+        List<String> instanceTypes = instanceTypeCatalog.getInstanceTypes();
+        Instant now = Instant.now();
+
+        // one paginated request per batch of types instead of one per type
+        for (int start = 0; start < instanceTypes.size(); start += SPOT_PRICE_BATCH_SIZE) {
+            List<String> batch = instanceTypes.subList(start, Math.min(start + SPOT_PRICE_BATCH_SIZE, instanceTypes.size()));
+            var request = DescribeSpotPriceHistoryRequest.builder()
+                    .startTime(spotPriceHistory.fetchStart(batch, now))
+                    .endTime(now)
+                    .instanceTypesWithStrings(batch)
+                    .productDescriptions(spotPriceHistory.getProductDescription());
 
-        ec2Client.describeSpotPriceHistoryPaginator(request)
-                .stream()
-                .flatMap(response -> response.spotPriceHistory().stream())
-                .forEach(spotPrice -> {
-                    BigDecimal price = new BigDecimal(spotPrice.spotPrice()).setScale(2, RoundingMode.HALF_UP);
-                    spotPrices.put(spotPrice.instanceTypeAsString(), price.doubleValue());
-                });
+            spotPriceHistory.record(ec2Client.describeSpotPriceHistoryPaginator(request.build())
+                    .stream()
+                    .flatMap(response -> response.spotPriceHistory().stream())
+                    .toList());
+            spotPriceHistory.markFetched(batch, now);
+        }
+        spotPriceHistory.save();
 
+        Map<String, Double> spotPrices = new LinkedHashMap<>();
+        for (String instanceType : instanceTypes) {
+            spotPriceHistory.cheapestAz(instanceType).ifPresent(zone -> {
+                double current = spotPriceHistory.current(instanceType).orElse(0);
+                double p95 = spotPriceHistory.percentile(instanceType, zone, SPOT_PRICE_SUGGESTION_WINDOW, 95).orElse(current);
+                BigDecimal price = BigDecimal.valueOf(Math.max(current, p95)).setScale(2, RoundingMode.UP);
+                spotPrices.put(instanceType, price.doubleValue());
+            });
+        }
         return spotPrices;
     }
 }
@@ -0,0 +1,146 @@
+package de.kartax.awslauncher.aws;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latency, attempts and failures per AWS operation (e.g. {@code Ec2.DescribeSnapshots}) for all clients.
+ * Latency covers the whole call including retries and backoff. Once bound to a registry the calls are
+ * also published as the {@code aws.call} timer and {@code aws.call.attempts} summary.
+ */
+@Slf4j
+@Component
+public class AwsCallMetrics implements ExecutionInterceptor, MeterBinder {
+
+    private static final ExecutionAttribute<Long> START_NANOS = new ExecutionAttribute<>("AwsCallMetrics.startNanos");
+    private static final ExecutionAttribute<AtomicInteger> ATTEMPTS = new ExecutionAttribute<>("AwsCallMetrics.attempts");
+
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(START_NANOS, System.nanoTime());
+        executionAttributes.putAttribute(ATTEMPTS, new AtomicInteger());
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        AtomicInteger attempts = executionAttributes.getAttribute(ATTEMPTS);
+        if (attempts != null) {
+            attempts.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        record(executionAttributes, false);
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        record(executionAttributes, true);
+    }
+
+    private void record(ExecutionAttributes executionAttributes, boolean failed) {
+        Long start = executionAttributes.getAttribute(START_NANOS);
+        if (start == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        AtomicInteger attemptCounter = executionAttributes.getAttribute(ATTEMPTS);
+        int attempts = attemptCounter != null ? attemptCounter.get() : 0;
+        String operation = executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME) + "."
+                + executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+
+        operations.computeIfAbsent(operation, key -> new OperationStats()).record(nanos, attempts, failed);
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            String outcome = failed ? "error" : "success";
+            Timer.builder("aws.call")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(registry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            DistributionSummary.builder("aws.call.attempts")
+                    .tag("operation", operation)
+                    .register(registry)
+                    .record(attempts);
+        }
+        if (failed || attempts > 1) {
+            log.debug("{} {} after {} attempts in {} ms", operation, failed ? "failed" : "succeeded",
+                    attempts, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    /**
+     * Current statistics by operation name, sorted by name.
+     */
+    public Map<String, OperationStats> getOperations() {
+        return new TreeMap<>(operations);
+    }
+
+    public static class OperationStats {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos, int attemptCount, boolean failed) {
+            calls.increment();
+            attempts.add(attemptCount);
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (failed) {
+                failures.increment();
+            }
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * Attempts beyond the first one, summed over all calls.
+         */
+        public long getRetries() {
+            return Math.max(0, attempts.sum() - calls.sum());
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+    }
+}
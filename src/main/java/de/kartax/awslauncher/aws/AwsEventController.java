@@ -0,0 +1,49 @@
+package de.kartax.awslauncher.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import de.kartax.awslauncher.config.AwsConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Endpoint for an EventBridge API destination forwarding EC2 and EBS state-change events.
+ * Events are only accepted with the configured token; without one the endpoint rejects everything,
+ * as a forged event could mark the rig stopped and re-enable launching.
+ */
+@Slf4j
+@RestController
+public class AwsEventController {
+
+    static final String TOKEN_HEADER = "X-Events-Token";
+
+    private final AwsEventIngestor ingestor;
+    private final AwsConfig awsConfig;
+
+    public AwsEventController(AwsEventIngestor ingestor, AwsConfig awsConfig) {
+        this.ingestor = ingestor;
+        this.awsConfig = awsConfig;
+    }
+
+    @PostMapping("/api/events")
+    public ResponseEntity<Void> receive(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                        @RequestBody JsonNode event) {
+        String expectedToken = awsConfig.getEventsToken();
+        if (expectedToken == null || expectedToken.isBlank()) {
+            log.debug("Rejected event, no events token configured");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (token == null || !MessageDigest.isEqual(expectedToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            log.debug("Rejected event with invalid token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ingestor.ingest(event) ? ResponseEntity.accepted().build() : ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,218 @@
+package de.kartax.awslauncher.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeInstancesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSnapshotsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesRequest;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.Volume;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Applies EventBridge EC2 instance, EBS snapshot and EBS volume notifications to the cached state,
+ * so views see a state change right away instead of at the next poll.
+ * Resources not known yet are described in the home region and tagged as such, like a refresh would.
+ */
+@Slf4j
+@Service
+public class AwsEventIngestor {
+
+    static final String INSTANCE_STATE_CHANGE = "EC2 Instance State-change Notification";
+    static final String SNAPSHOT_NOTIFICATION = "EBS Snapshot Notification";
+    static final String VOLUME_NOTIFICATION = "EBS Volume Notification";
+
+    private final AwsStateCache stateCache;
+    private final DashboardEventService eventService;
+    private final Ec2Client ec2Client;
+    private final ResourceScope scope;
+    private final Ec2ClientRegistry clientRegistry;
+
+    public AwsEventIngestor(AwsStateCache stateCache, DashboardEventService eventService, @Lazy Ec2Client ec2Client, ResourceScope scope, Ec2ClientRegistry clientRegistry) {
+        this.stateCache = stateCache;
+        this.eventService = eventService;
+        this.ec2Client = ec2Client;
+        this.scope = scope;
+        this.clientRegistry = clientRegistry;
+    }
+
+    /**
+     * @return {@code false} if the event is of a type the dashboard does not track
+     */
+    public boolean ingest(JsonNode event) {
+        String detailType = event.path("detail-type").asText();
+        log.debug("ingest {}", detailType);
+        DashboardUpdateEvent changes = switch (detailType) {
+            case INSTANCE_STATE_CHANGE -> onInstanceStateChange(event.path("detail"));
+            case SNAPSHOT_NOTIFICATION -> onSnapshotNotification(event.path("detail"));
+            case VOLUME_NOTIFICATION -> onVolumeNotification(event);
+            default -> null;
+        };
+        if (changes == null) {
+            return false;
+        }
+        eventService.broadcastEvent(changes);
+        return true;
+    }
+
+    private DashboardUpdateEvent onInstanceStateChange(JsonNode detail) {
+        String instanceId = detail.path("instance-id").asText(null);
+        String state = detail.path("state").asText(null);
+        if (instanceId == null || state == null) {
+            return null;
+        }
+        Instance described = find(stateCache.getState().instances(), instanceId, Instance::instanceId) == null
+                ? describeInstance(instanceId)
+                : null;
+
+        return stateCache.patch(current -> {
+            var event = new DashboardUpdateEvent(this);
+            Instance known = find(current.instances(), instanceId, Instance::instanceId);
+            Instance instance = known != null ? known : described;
+            if (instance != null) {
+                Instance patched = instance.toBuilder().state(InstanceState.builder().name(state).build()).build();
+                event.setInstances(upsert(current.instances(), patched, Instance::instanceId));
+                event.setMessage("Instance " + ResourceNames.nameOrId(patched.tags(), instanceId) + " is " + state);
+            }
+            return event;
+        });
+    }
+
+    private DashboardUpdateEvent onSnapshotNotification(JsonNode detail) {
+        String snapshotId = resourceId(detail.path("snapshot_id").asText(null));
+        if (snapshotId == null) {
+            return null;
+        }
+        boolean succeeded = "succeeded".equals(detail.path("result").asText());
+        Snapshot described = find(stateCache.getState().snapshots(), snapshotId, Snapshot::snapshotId) == null
+                ? describeSnapshot(snapshotId)
+                : null;
+
+        return stateCache.patch(current -> {
+            var event = new DashboardUpdateEvent(this);
+            Snapshot known = find(current.snapshots(), snapshotId, Snapshot::snapshotId);
+            Snapshot snapshot = known != null ? known : described;
+            if (snapshot != null) {
+                Snapshot patched = succeeded
+                        ? snapshot.toBuilder().state(SnapshotState.COMPLETED).progress("100%").build()
+                        : snapshot.toBuilder().state(SnapshotState.ERROR).build();
+                event.setSnapshots(upsert(current.snapshots(), patched, Snapshot::snapshotId));
+                event.setMessage("Snapshot " + ResourceNames.nameOrId(patched.tags(), snapshotId) + " " + patched.stateAsString());
+            }
+            return event;
+        });
+    }
+
+    private DashboardUpdateEvent onVolumeNotification(JsonNode event) {
+        JsonNode resources = event.path("resources");
+        String volumeId = resources.isArray() && !resources.isEmpty() ? resourceId(resources.get(0).asText(null)) : null;
+        if (volumeId == null) {
+            return null;
+        }
+        boolean deleted = "deleted".equals(event.path("detail").path("result").asText());
+        Volume described = deleted ? null : describeVolume(volumeId);
+
+        return stateCache.patch(current -> {
+            var changes = new DashboardUpdateEvent(this);
+            if (described != null) {
+                changes.setVolumes(upsert(current.volumes(), described, Volume::volumeId));
+            } else if (find(current.volumes(), volumeId, Volume::volumeId) != null) {
+                changes.setVolumes(remove(current.volumes(), volumeId, Volume::volumeId));
+            }
+            return changes;
+        });
+    }
+
+    private Instance describeInstance(String instanceId) {
+        try {
+            return ec2Client.describeInstances(DescribeInstancesRequest.builder().instanceIds(instanceId).build())
+                    .reservations().stream()
+                    .flatMap(reservation -> reservation.instances().stream())
+                    .filter(instance -> scope.matches(instance.tags()))
+                    .map(instance -> LeanResources.instance(instance, clientRegistry.homeLabel()))
+                    .findFirst().orElse(null);
+        } catch (Ec2Exception e) {
+            log.debug("Error describing instance {}", instanceId, e);
+            return null;
+        }
+    }
+
+    private Snapshot describeSnapshot(String snapshotId) {
+        try {
+            return ec2Client.describeSnapshots(DescribeSnapshotsRequest.builder().snapshotIds(snapshotId).build())
+                    .snapshots().stream()
+                    .filter(snapshot -> scope.matches(snapshot.tags()))
+                    .map(snapshot -> LeanResources.snapshot(snapshot, clientRegistry.homeLabel()))
+                    .findFirst().orElse(null);
+        } catch (Ec2Exception e) {
+            log.debug("Error describing snapshot {}", snapshotId, e);
+            return null;
+        }
+    }
+
+    private Volume describeVolume(String volumeId) {
+        try {
+            return ec2Client.describeVolumes(DescribeVolumesRequest.builder().volumeIds(volumeId).build())
+                    .volumes().stream()
+                    .filter(volume -> scope.matches(volume.tags()))
+                    .map(volume -> LeanResources.volume(volume, clientRegistry.homeLabel()))
+                    .findFirst().orElse(null);
+        } catch (Ec2Exception e) {
+            log.debug("Error describing volume {}", volumeId, e);
+            return null;
+        }
+    }
+
+    /**
+     * EventBridge reports some resources as ARNs, e.g. {@code arn:aws:ec2::eu-central-1:snapshot/snap-0123}.
+     */
+    private static String resourceId(String idOrArn) {
+        if (idOrArn == null || idOrArn.isBlank()) {
+            return null;
+        }
+        return idOrArn.substring(idOrArn.lastIndexOf('/') + 1);
+    }
+
+    private static <T> T find(List<T> items, String id, Function<T, String> idOf) {
+        if (items == null) {
+            return null;
+        }
+        return items.stream().filter(item -> id.equals(idOf.apply(item))).findFirst().orElse(null);
+    }
+
+    private static <T> List<T> upsert(List<T> items, T item, Function<T, String> idOf) {
+        String id = idOf.apply(item);
+        List<T> result = new ArrayList<>(items != null ? items.size() + 1 : 1);
+        boolean replaced = false;
+        if (items != null) {
+            for (T existing : items) {
+                if (id.equals(idOf.apply(existing))) {
+                    result.add(item);
+                    replaced = true;
+                } else {
+                    result.add(existing);
+                }
+            }
+        }
+        if (!replaced) {
+            result.add(item);
+        }
+        return result;
+    }
+
+    private static <T> List<T> remove(List<T> items, String id, Function<T, String> idOf) {
+        return items.stream().filter(item -> !id.equals(idOf.apply(item))).toList();
+    }
+}
@@ -1,52 +1,331 @@
 package de.kartax.awslauncher.aws;
 
+import de.kartax.awslauncher.config.AwsConfig;
 import de.kartax.awslauncher.dashboard.DashboardEventService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.ec2.model.Instance;
 import software.amazon.awssdk.services.sfn.SfnClient;
+import software.amazon.awssdk.services.sfn.model.DescribeExecutionRequest;
+import software.amazon.awssdk.services.sfn.model.ExecutionAlreadyExistsException;
+import software.amazon.awssdk.services.sfn.model.ExecutionListItem;
+import software.amazon.awssdk.services.sfn.model.ExecutionStatus;
+import software.amazon.awssdk.services.sfn.model.ListExecutionsRequest;
+import software.amazon.awssdk.services.sfn.model.SfnException;
 import software.amazon.awssdk.services.sfn.model.StartExecutionRequest;
 import software.amazon.awssdk.services.sfn.model.StartExecutionResponse;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+/**
+ * Launches rigs off the UI thread. Launches are queued on a single thread and only one launch per rig
+ * is in flight; launching a rig again while it is in flight returns the same future.
+ * <p>
+ * Every launch carries an idempotency key made of the rig name, the instance type and a time window of
+ * {@code aws.launchDedupeMinutes}. It is the name of the state machine execution and the client token of
+ * a fast launch, so AWS starts at most one rig per key, even across replicas or after a restart. Since a
+ * second click can fall into the next window, or land on a replica a little ahead, a launch first looks
+ * for one of the same rig that is running or has succeeded within the last window, and follows or
+ * refuses it. A key whose launch failed is followed by a numbered attempt key.
+ */
 @Slf4j
 @Service
 public class AwsService {
 
     String STATE_MACHINE_ARN = "arn:aws:states:eu-central-1:507136533040:stateMachine:LaunchRecentGamingRig";
 
+    private static final int MAX_KEY_LENGTH = 64;
+    // window number and attempt suffix
+    private static final int SUFFIX_LENGTH = 12;
+    private static final int MAX_ATTEMPTS = 9;
+    private static final int RECENT_EXECUTIONS = 50;
+
     private final DashboardEventService eventService;
     private final SfnClient sfnClient;
     private final AwsBackgroundTask awsBackgroundTask;
+    private final LaunchTracker launchTracker;
+    private final FastLaunch fastLaunch;
+    private final AwsStateCache stateCache;
+    private final AwsConfig awsConfig;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService launchExecutor;
 
-    public AwsService(DashboardEventService eventService, SfnClient sfnClient, AwsBackgroundTask awsBackgroundTask) {
+    public AwsService(DashboardEventService eventService, @Lazy SfnClient sfnClient, AwsBackgroundTask awsBackgroundTask, LaunchTracker launchTracker, FastLaunch fastLaunch, AwsStateCache stateCache, AwsConfig awsConfig, MeterRegistry meterRegistry) {
         this.eventService = eventService;
         this.sfnClient = sfnClient;
         this.awsBackgroundTask = awsBackgroundTask;
+        this.launchTracker = launchTracker;
+        this.fastLaunch = fastLaunch;
+        this.stateCache = stateCache;
+        this.awsConfig = awsConfig;
+        this.meterRegistry = meterRegistry;
+        this.launchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "aws-launch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        launchExecutor.shutdownNow();
     }
 
-    public void launch(String name, String instanceType){
+    /**
+     * Queues a launch and returns without waiting for AWS.
+     *
+     * @return completes with the instance id of a fast launch or the execution ARN once the state machine
+     * has succeeded, and exceptionally if the launch was refused, failed or took longer than
+     * {@code aws.launchTimeoutMinutes}
+     */
+    public CompletableFuture<String> launch(String name, String instanceType) {
+        if (name == null || name.isBlank() || instanceType == null || instanceType.isBlank()) {
+            eventService.broadcastMessageOnlyEvent(this, "Pick a name and an instance type to launch");
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Launch needs a name and an instance type"));
+        }
+        String rig = name.trim().toLowerCase(Locale.ROOT);
+        CompletableFuture<String> launch = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(rig, launch);
+        if (running != null) {
+            log.debug("Launch of {} already in flight", name);
+            eventService.broadcastMessageOnlyEvent(this, "Launch of " + name + " is already in progress");
+            return running;
+        }
+        // A launch that never finishes must not block the rig for good
+        launch.orTimeout(Duration.ofMinutes(awsConfig.getLaunchTimeoutMinutes()).toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> inFlight.remove(rig, launch));
+        try {
+            launchExecutor.execute(() -> start(name, instanceType, launch));
+        } catch (RejectedExecutionException e) {
+            launch.completeExceptionally(e);
+        }
+        return launch;
+    }
+
+    private void start(String name, String instanceType, CompletableFuture<String> launch) {
         log.debug("Launching EC2 instance: {} - {}", name, instanceType);
-        eventService.broadcastMessageOnlyEvent(this, "Launching " + name + " of type " + instanceType );
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        String path = "stateMachine";
 
         try {
-            String input = String.format("{\"instanceType\": \"%s\"}", instanceType);
+            if (isRunning(name)) {
+                outcome = "refused";
+                eventService.broadcastMessageOnlyEvent(this, name + " is already running");
+                launch.completeExceptionally(new IllegalStateException(name + " is already running"));
+                return;
+            }
+            eventService.broadcastMessageOnlyEvent(this, "Launching " + name + " of type " + instanceType );
+            Instant now = Instant.now();
+            String key = idempotencyKey(name, instanceType, now);
+            String prefix = keyPrefix(name, instanceType);
+            Instant since = now.minus(dedupeWindow());
 
-            StartExecutionRequest request = StartExecutionRequest.builder()
-                    .stateMachineArn(STATE_MACHINE_ARN)
-                    .input(input)
-                    .build();
+            if (awsConfig.isFastLaunch()) {
+                List<Instance> earlier = fastLaunch.launchesOf(name).stream()
+                        .filter(instance -> instance.clientToken() != null && instance.clientToken().startsWith(prefix))
+                        .toList();
+                Optional<Instance> live = earlier.stream()
+                        .filter(instance -> isLive(instance) && instance.launchTime() != null && instance.launchTime().isAfter(since))
+                        .findFirst();
+                if (live.isPresent()) {
+                    path = "fast";
+                    outcome = "duplicate";
+                    refuseDuplicate(name, live.get().instanceId(), launch);
+                    return;
+                }
+                // a used token would only hand back the instance it started, which is gone by now
+                Set<String> used = earlier.stream().map(Instance::clientToken).collect(Collectors.toSet());
+                String token = IntStream.rangeClosed(1, MAX_ATTEMPTS)
+                        .mapToObj(attempt -> attemptKey(key, attempt))
+                        .filter(candidate -> !used.contains(candidate))
+                        .findFirst()
+                        .orElseThrow(() -> attemptsUsedUp(name));
+                Optional<String> instanceId = fastLaunch.launch(name, instanceType, token);
+                if (instanceId.isPresent()) {
+                    path = "fast";
+                    eventService.broadcastMessageOnlyEvent(this, "Launched " + instanceId.get() + " from cached image");
+                    awsBackgroundTask.runOnceDelayed(Duration.ofSeconds(2));
+                    outcome = "success";
+                    launch.complete(instanceId.get());
+                    return;
+                }
+            }
 
-            StartExecutionResponse response = sfnClient.startExecution(request);
-            log.debug("Started state machine execution with ARN: {}", response.executionArn());
-            eventService.broadcastMessageOnlyEvent(this, "Started state machine execution");
+            // an execution of the previous window, or of another replica, may still be within the dedupe window
+            Optional<ExecutionListItem> recent = recentExecution(prefix, since);
+            if (recent.isPresent()) {
+                outcome = joinOrRefuse(name, recent.get().executionArn(), recent.get().status(), launch);
+                return;
+            }
 
-            awsBackgroundTask.runOnceDelayed(Duration.ofSeconds(5));
+            String input = String.format("{\"instanceType\": \"%s\"}", instanceType);
 
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                String attemptKey = attemptKey(key, attempt);
+                StartExecutionRequest request = StartExecutionRequest.builder()
+                        .stateMachineArn(STATE_MACHINE_ARN)
+                        .name(attemptKey)
+                        .input(input)
+                        .build();
+                try {
+                    StartExecutionResponse response = sfnClient.startExecution(request);
+                    log.debug("Started state machine execution with ARN: {}", response.executionArn());
+                    eventService.broadcastMessageOnlyEvent(this, "Started state machine execution " + attemptKey);
 
-        } catch (Exception e) {
+                    awsBackgroundTask.runOnceDelayed(Duration.ofSeconds(5));
+                    follow(response.executionArn(), launch);
+                    outcome = "success";
+                    return;
+                } catch (ExecutionAlreadyExistsException e) {
+                    String executionArn = executionArn(attemptKey);
+                    ExecutionStatus status = sfnClient.describeExecution(DescribeExecutionRequest.builder()
+                            .executionArn(executionArn)
+                            .build()).status();
+                    if (status == ExecutionStatus.RUNNING || status == ExecutionStatus.SUCCEEDED) {
+                        outcome = joinOrRefuse(name, executionArn, status, launch);
+                        return;
+                    }
+                    // failed, timed out or aborted: the rig did not launch, so try again under the next key
+                    log.debug("Execution {} already exists and ended {}", attemptKey, status);
+                }
+            }
+            throw attemptsUsedUp(name);
+
+        } catch (Throwable e) {
             log.debug("Error launching: ", e);
             eventService.broadcastMessageOnlyEvent(this, "ERROR:: "+e.getMessage());
+            launch.completeExceptionally(e);
+        } finally {
+            // Micrometer rejects null tag values
+            sample.stop(meterRegistry.timer("aws.launch", "instanceType", instanceType != null ? instanceType : "unknown",
+                    "path", path, "outcome", outcome));
+        }
+    }
+
+    /**
+     * The latest execution for the key prefix that is still running or has succeeded within the window.
+     * Recent executions only, so the list fits a single page.
+     */
+    private Optional<ExecutionListItem> recentExecution(String prefix, Instant since) {
+        try {
+            return sfnClient.listExecutions(ListExecutionsRequest.builder()
+                            .stateMachineArn(STATE_MACHINE_ARN)
+                            .maxResults(RECENT_EXECUTIONS)
+                            .build())
+                    .executions().stream()
+                    .filter(execution -> execution.name().startsWith(prefix))
+                    .filter(execution -> execution.status() == ExecutionStatus.RUNNING
+                            || execution.status() == ExecutionStatus.SUCCEEDED && execution.startDate().isAfter(since))
+                    .findFirst();
+        } catch (SfnException e) {
+            // the execution name still keeps a second launch out of the current window
+            log.debug("Error listing recent executions", e);
+            return Optional.empty();
         }
     }
+
+    /**
+     * Another launch of the rig got there first: follows it while it runs, and refuses to launch again
+     * once it has succeeded.
+     *
+     * @return the outcome to record
+     */
+    private String joinOrRefuse(String name, String executionArn, ExecutionStatus status, CompletableFuture<String> launch) {
+        if (status == ExecutionStatus.RUNNING) {
+            log.debug("Joining running execution {}", executionArn);
+            eventService.broadcastMessageOnlyEvent(this, "Launch of " + name + " is already running, following it");
+            follow(executionArn, launch);
+            return "joined";
+        }
+        refuseDuplicate(name, executionArn, launch);
+        return "duplicate";
+    }
+
+    private void refuseDuplicate(String name, String launched, CompletableFuture<String> launch) {
+        String message = name + " was already launched in the last " + dedupeWindow().toMinutes() + " minutes: " + launched;
+        log.debug(message);
+        eventService.broadcastMessageOnlyEvent(this, message);
+        launch.completeExceptionally(new IllegalStateException(message));
+    }
+
+    private void follow(String executionArn, CompletableFuture<String> launch) {
+        launchTracker.track(executionArn)
+                .whenComplete((status, error) -> {
+                    awsBackgroundTask.runOnceDelayed(Duration.ZERO);
+                    if (status == ExecutionStatus.SUCCEEDED) {
+                        launch.complete(executionArn);
+                    } else {
+                        launch.completeExceptionally(error != null ? error : new IllegalStateException("Launch " + status));
+                    }
+                });
+    }
+
+    private IllegalStateException attemptsUsedUp(String name) {
+        return new IllegalStateException("All " + MAX_ATTEMPTS + " launch attempts of " + name + " in this window failed");
+    }
+
+    private boolean isRunning(String name) {
+        List<Instance> instances = stateCache.getState().instances();
+        return instances != null && instances.stream()
+                .filter(instance -> name.equals(ResourceNames.nameOrId(instance.tags(), instance.instanceId())))
+                .anyMatch(AwsService::isLive);
+    }
+
+    private static boolean isLive(Instance instance) {
+        String state = instance.state() != null ? instance.state().nameAsString() : "";
+        return state.startsWith("running") || state.startsWith("pending");
+    }
+
+    private String executionArn(String key) {
+        return STATE_MACHINE_ARN.replace(":stateMachine:", ":execution:") + ":" + key;
+    }
+
+    private Duration dedupeWindow() {
+        return Duration.ofMinutes(Math.max(1, awsConfig.getLaunchDedupeMinutes()));
+    }
+
+    /**
+     * Same name, instance type and time window give the same key. Only characters allowed in both
+     * execution names and client tokens are kept.
+     */
+    String idempotencyKey(String name, String instanceType, Instant now) {
+        return keyPrefix(name, instanceType) + now.getEpochSecond() / dedupeWindow().toSeconds();
+    }
+
+    /**
+     * The key of a later attempt in the same window, once the launch under the key has failed.
+     */
+    static String attemptKey(String key, int attempt) {
+        return attempt <= 1 ? key : key + "-" + attempt;
+    }
+
+    private static String keyPrefix(String name, String instanceType) {
+        String type = "-" + sanitize(instanceType) + "-";
+        String rig = sanitize(name);
+        return rig.substring(0, Math.min(rig.length(), MAX_KEY_LENGTH - type.length() - SUFFIX_LENGTH)) + type;
+    }
+
+    private static String sanitize(String value) {
+        return value.trim().replaceAll("[^A-Za-z0-9_-]", "-");
+    }
 }
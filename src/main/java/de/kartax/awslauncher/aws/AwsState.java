@@ -0,0 +1,138 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import de.kartax.awslauncher.dashboard.ResourceDelta;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.Volume;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable, versioned "last known state" of the AWS account as shown on the dashboard.
+ * Sections that failed to refresh keep their previous value.
+ * Sections restored from disk after a restart stay marked as such until a live refresh replaces them;
+ * patches from state-change events do not count, as they only touch single resources.
+ */
+public record AwsState(long version,
+                       Instant refreshedAt,
+                       Set<RefreshSection> restoredSections,
+                       List<Instance> instances,
+                       List<Volume> volumes,
+                       List<Snapshot> snapshots,
+                       List<BigDecimal> currentMonthCost,
+                       Map<String, Double> instanceTypesWithPrice,
+                       ResourceIndex<Volume> volumeIndex,
+                       ResourceIndex<Snapshot> snapshotIndex) {
+
+    public static final AwsState EMPTY = new AwsState(0, null, Set.of(), null, null, null, null, null,
+            ResourceIndex.ofVolumes(List.of()), ResourceIndex.ofSnapshots(List.of()));
+
+    static AwsState restored(Instant refreshedAt, DashboardUpdateEvent sections) {
+        return new AwsState(1, refreshedAt, Collections.unmodifiableSet(sectionsOf(sections)),
+                sections.getInstances(), sections.getVolumes(), sections.getSnapshots(),
+                sections.getCurrentMonthCost(), sections.getInstanceTypesWithPrice(),
+                ResourceIndex.ofVolumes(sections.getVolumes()), ResourceIndex.ofSnapshots(sections.getSnapshots()));
+    }
+
+    public boolean isEmpty() {
+        return version == 0;
+    }
+
+    public boolean restored() {
+        return !restoredSections.isEmpty();
+    }
+
+    /**
+     * @param live whether the event holds refreshed sections, which are then no longer marked as restored
+     */
+    AwsState merge(DashboardUpdateEvent event, Instant refreshedAt, boolean live) {
+        return new AwsState(version + 1, refreshedAt, live ? stillRestored(event) : restoredSections,
+                event.getInstances() != null ? event.getInstances() : instances,
+                event.getVolumes() != null ? event.getVolumes() : volumes,
+                event.getSnapshots() != null ? event.getSnapshots() : snapshots,
+                event.getCurrentMonthCost() != null ? event.getCurrentMonthCost() : currentMonthCost,
+                event.getInstanceTypesWithPrice() != null ? event.getInstanceTypesWithPrice() : instanceTypesWithPrice,
+                event.getVolumes() != null ? ResourceIndex.ofVolumes(event.getVolumes()) : volumeIndex,
+                event.getSnapshots() != null ? ResourceIndex.ofSnapshots(event.getSnapshots()) : snapshotIndex);
+    }
+
+    private Set<RefreshSection> stillRestored(DashboardUpdateEvent event) {
+        if (restoredSections.isEmpty()) {
+            return restoredSections;
+        }
+        Set<RefreshSection> remaining = EnumSet.noneOf(RefreshSection.class);
+        remaining.addAll(restoredSections);
+        remaining.removeAll(sectionsOf(event));
+        return remaining.isEmpty() ? Set.of() : Collections.unmodifiableSet(remaining);
+    }
+
+    private static Set<RefreshSection> sectionsOf(DashboardUpdateEvent event) {
+        Set<RefreshSection> sections = EnumSet.noneOf(RefreshSection.class);
+        if (event.getInstances() != null) {
+            sections.add(RefreshSection.INSTANCES);
+        }
+        if (event.getVolumes() != null) {
+            sections.add(RefreshSection.VOLUMES);
+        }
+        if (event.getSnapshots() != null) {
+            sections.add(RefreshSection.SNAPSHOTS);
+        }
+        if (event.getCurrentMonthCost() != null) {
+            sections.add(RefreshSection.COST);
+        }
+        if (event.getInstanceTypesWithPrice() != null) {
+            sections.add(RefreshSection.PRICES);
+        }
+        return sections;
+    }
+
+    /**
+     * Builds an event holding only what changed compared to the given previous state. A refresh replaces
+     * the lists even when nothing changed, so sections whose delta is empty are left out.
+     */
+    public DashboardUpdateEvent changesSince(AwsState previous, Object source) {
+        var event = new DashboardUpdateEvent(source);
+        if (instances != previous.instances && instances != null) {
+            event.setInstanceChanges(nonEmpty(ResourceDelta.between(previous.instances, instances, Instance::instanceId)));
+        }
+        if (volumes != previous.volumes && volumes != null) {
+            event.setVolumeChanges(nonEmpty(ResourceDelta.between(previous.volumes, volumes, Volume::volumeId)));
+        }
+        if (snapshots != previous.snapshots && snapshots != null) {
+            event.setSnapshotChanges(nonEmpty(ResourceDelta.between(previous.snapshots, snapshots, Snapshot::snapshotId)));
+        }
+        if (!Objects.equals(currentMonthCost, previous.currentMonthCost)) {
+            event.setCurrentMonthCost(currentMonthCost);
+        }
+        if (!Objects.equals(instanceTypesWithPrice, previous.instanceTypesWithPrice)) {
+            event.setInstanceTypesWithPrice(instanceTypesWithPrice);
+        }
+        if (previous.restored() && !restored()) {
+            event.setStale(false);
+        }
+        return event;
+    }
+
+    private static <T> ResourceDelta<T> nonEmpty(ResourceDelta<T> delta) {
+        return delta.isEmpty() ? null : delta;
+    }
+
+    public DashboardUpdateEvent toEvent(Object source) {
+        var event = new DashboardUpdateEvent(source);
+        event.setInstances(instances);
+        event.setVolumes(volumes);
+        event.setSnapshots(snapshots);
+        event.setCurrentMonthCost(currentMonthCost);
+        event.setInstanceTypesWithPrice(instanceTypesWithPrice);
+        event.setStale(restored());
+        return event;
+    }
+}
@@ -0,0 +1,95 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.Volume;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Shared cache of the last known {@link AwsState}. Newly attached views render from here
+ * instead of triggering their own AWS refresh.
+ */
+@Slf4j
+@Service
+public class AwsStateCache {
+
+    private final AtomicReference<AwsState> state = new AtomicReference<>(AwsState.EMPTY);
+
+    public AwsState getState() {
+        return state.get();
+    }
+
+    /**
+     * Merges a refresh into the cached state and returns the changes for connected views.
+     */
+    public DashboardUpdateEvent update(DashboardUpdateEvent event) {
+        Instant now = Instant.now();
+        return apply(current -> event, current -> now, true);
+    }
+
+    /**
+     * Patches single resources into the cached state without resetting its staleness.
+     * The patch function may be called more than once if a refresh completes concurrently.
+     */
+    public DashboardUpdateEvent patch(Function<AwsState, DashboardUpdateEvent> patch) {
+        return apply(patch, AwsState::refreshedAt, false);
+    }
+
+    /**
+     * Merges the sections and changes another node has published, keeping that node's refresh time.
+     * Changes are applied to the cached lists they were computed from.
+     */
+    public DashboardUpdateEvent replicate(DashboardUpdateEvent sections, Instant refreshedAt) {
+        return apply(current -> withChangesApplied(current, sections),
+                current -> refreshedAt != null ? refreshedAt : current.refreshedAt(), true);
+    }
+
+    private static DashboardUpdateEvent withChangesApplied(AwsState current, DashboardUpdateEvent sections) {
+        var event = new DashboardUpdateEvent(sections.getSource());
+        event.setMessage(sections.getMessage());
+        event.setInstances(sections.getInstanceChanges() != null
+                ? sections.getInstanceChanges().applyTo(current.instances(), Instance::instanceId) : sections.getInstances());
+        event.setVolumes(sections.getVolumeChanges() != null
+                ? sections.getVolumeChanges().applyTo(current.volumes(), Volume::volumeId) : sections.getVolumes());
+        event.setSnapshots(sections.getSnapshotChanges() != null
+                ? sections.getSnapshotChanges().applyTo(current.snapshots(), Snapshot::snapshotId) : sections.getSnapshots());
+        event.setCurrentMonthCost(sections.getCurrentMonthCost());
+        event.setInstanceTypesWithPrice(sections.getInstanceTypesWithPrice());
+        return event;
+    }
+
+    private DashboardUpdateEvent apply(Function<AwsState, DashboardUpdateEvent> patch, Function<AwsState, Instant> refreshedAt, boolean live) {
+        AwsState previous;
+        AwsState updated;
+        DashboardUpdateEvent event;
+        do {
+            previous = state.get();
+            event = patch.apply(previous);
+            updated = previous.merge(event, refreshedAt.apply(previous), live);
+        } while (!state.compareAndSet(previous, updated));
+        log.debug("cached state version {}", updated.version());
+
+        DashboardUpdateEvent changes = updated.changesSince(previous, event.getSource());
+        changes.setMessage(event.getMessage());
+        return changes;
+    }
+
+    /**
+     * Uses a state restored from disk, unless live data has arrived in the meantime.
+     */
+    public boolean restore(AwsState restored) {
+        return state.compareAndSet(AwsState.EMPTY, restored);
+    }
+
+    public boolean isStale(Duration staleAfter) {
+        Instant refreshedAt = state.get().refreshedAt();
+        return refreshedAt == null || refreshedAt.plus(staleAfter).isBefore(Instant.now());
+    }
+}
@@ -0,0 +1,214 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import de.kartax.awslauncher.dashboard.ResourceDelta;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.Volume;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the dashboard sections, shared by {@link AwsStateFile} and {@link ClusterSync}.
+ * Only the fields the dashboard shows are written; sections and changes that are null stay null.
+ */
+final class AwsStateCodec {
+
+    private AwsStateCodec() {
+    }
+
+    static void writeSections(DataOutputStream out, DashboardUpdateEvent sections) throws IOException {
+        writeList(out, sections.getInstances(), AwsStateCodec::writeInstance);
+        writeList(out, sections.getVolumes(), AwsStateCodec::writeVolume);
+        writeList(out, sections.getSnapshots(), AwsStateCodec::writeSnapshot);
+        writeList(out, sections.getCurrentMonthCost(), (o, amount) -> o.writeUTF(amount.toPlainString()));
+        writeList(out, sections.getInstanceTypesWithPrice() != null ? List.copyOf(sections.getInstanceTypesWithPrice().entrySet()) : null,
+                (o, price) -> {
+                    o.writeUTF(price.getKey());
+                    o.writeDouble(price.getValue());
+                });
+    }
+
+    static DashboardUpdateEvent readSections(DataInputStream in, Object source) throws IOException {
+        var sections = new DashboardUpdateEvent(source);
+        sections.setInstances(readList(in, AwsStateCodec::readInstance));
+        sections.setVolumes(readList(in, AwsStateCodec::readVolume));
+        sections.setSnapshots(readList(in, AwsStateCodec::readSnapshot));
+        sections.setCurrentMonthCost(readList(in, i -> new BigDecimal(i.readUTF())));
+        List<Map.Entry<String, Double>> prices = readList(in, i -> Map.entry(i.readUTF(), i.readDouble()));
+        if (prices != null) {
+            Map<String, Double> instanceTypesWithPrice = new LinkedHashMap<>();
+            for (var price : prices) {
+                instanceTypesWithPrice.put(price.getKey(), price.getValue());
+            }
+            sections.setInstanceTypesWithPrice(instanceTypesWithPrice);
+        }
+        return sections;
+    }
+
+    static void writeChanges(DataOutputStream out, DashboardUpdateEvent changes) throws IOException {
+        writeDelta(out, changes.getInstanceChanges(), AwsStateCodec::writeInstance);
+        writeDelta(out, changes.getVolumeChanges(), AwsStateCodec::writeVolume);
+        writeDelta(out, changes.getSnapshotChanges(), AwsStateCodec::writeSnapshot);
+    }
+
+    static void readChanges(DataInputStream in, DashboardUpdateEvent changes) throws IOException {
+        changes.setInstanceChanges(readDelta(in, AwsStateCodec::readInstance));
+        changes.setVolumeChanges(readDelta(in, AwsStateCodec::readVolume));
+        changes.setSnapshotChanges(readDelta(in, AwsStateCodec::readSnapshot));
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeInstance(DataOutputStream out, Instance instance) throws IOException {
+        out.writeUTF(instance.instanceId());
+        writeString(out, instance.instanceTypeAsString());
+        writeString(out, instance.state() != null ? instance.state().nameAsString() : null);
+        writeInstant(out, instance.launchTime());
+        writeTags(out, instance.tags());
+    }
+
+    private static Instance readInstance(DataInputStream in) throws IOException {
+        return Instance.builder()
+                .instanceId(in.readUTF())
+                .instanceType(readString(in))
+                .state(InstanceState.builder().name(readString(in)).build())
+                .launchTime(readInstant(in))
+                .tags(readTags(in))
+                .build();
+    }
+
+    private static void writeVolume(DataOutputStream out, Volume volume) throws IOException {
+        out.writeUTF(volume.volumeId());
+        out.writeInt(volume.size() != null ? volume.size() : 0);
+        writeString(out, volume.stateAsString());
+        writeString(out, volume.availabilityZone());
+        writeInstant(out, volume.createTime());
+        writeTags(out, volume.tags());
+    }
+
+    private static Volume readVolume(DataInputStream in) throws IOException {
+        return Volume.builder()
+                .volumeId(in.readUTF())
+                .size(in.readInt())
+                .state(readString(in))
+                .availabilityZone(readString(in))
+                .createTime(readInstant(in))
+                .tags(readTags(in))
+                .build();
+    }
+
+    private static void writeSnapshot(DataOutputStream out, Snapshot snapshot) throws IOException {
+        out.writeUTF(snapshot.snapshotId());
+        writeString(out, snapshot.volumeId());
+        out.writeInt(snapshot.volumeSize() != null ? snapshot.volumeSize() : 0);
+        writeString(out, snapshot.progress());
+        writeString(out, snapshot.stateAsString());
+        writeInstant(out, snapshot.startTime());
+        writeTags(out, snapshot.tags());
+    }
+
+    private static Snapshot readSnapshot(DataInputStream in) throws IOException {
+        return Snapshot.builder()
+                .snapshotId(in.readUTF())
+                .volumeId(readString(in))
+                .volumeSize(in.readInt())
+                .progress(readString(in))
+                .state(readString(in))
+                .startTime(readInstant(in))
+                .tags(readTags(in))
+                .build();
+    }
+
+    private static void writeTags(DataOutputStream out, List<Tag> tags) throws IOException {
+        out.writeShort(tags.size());
+        for (Tag tag : tags) {
+            out.writeUTF(tag.key());
+            out.writeUTF(tag.value());
+        }
+    }
+
+    private static List<Tag> readTags(DataInputStream in) throws IOException {
+        int size = in.readShort();
+        List<Tag> tags = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tags.add(Tag.builder().key(in.readUTF()).value(in.readUTF()).build());
+        }
+        return tags;
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant value) throws IOException {
+        out.writeLong(value != null ? value.toEpochMilli() : Long.MIN_VALUE);
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        long value = in.readLong();
+        return value != Long.MIN_VALUE ? Instant.ofEpochMilli(value) : null;
+    }
+
+    private static <T> void writeDelta(DataOutputStream out, ResourceDelta<T> delta, Writer<T> writer) throws IOException {
+        out.writeBoolean(delta != null);
+        if (delta != null) {
+            writeList(out, delta.getAdded(), writer);
+            writeList(out, delta.getChanged(), writer);
+            writeList(out, delta.getRemoved(), (o, id) -> o.writeUTF(id));
+        }
+    }
+
+    private static <T> ResourceDelta<T> readDelta(DataInputStream in, Reader<T> reader) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new ResourceDelta<>(readList(in, reader), readList(in, reader), readList(in, i -> i.readUTF()));
+    }
+
+    private static <T> void writeList(DataOutputStream out, List<T> items, Writer<T> writer) throws IOException {
+        out.writeInt(items != null ? items.size() : -1);
+        if (items != null) {
+            for (T item : items) {
+                writer.write(out, item);
+            }
+        }
+    }
+
+    private static <T> List<T> readList(DataInputStream in, Reader<T> reader) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<T> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(reader.read(in));
+        }
+        return items;
+    }
+
+    @FunctionalInterface
+    private interface Writer<T> {
+        void write(DataOutputStream out, T item) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+}
@@ -0,0 +1,74 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact binary snapshot of the last known {@link AwsState}, written after every refresh and read at startup,
+ * so the first page after a restart can render right away. Only the fields the dashboard shows are stored.
+ */
+@Slf4j
+@Component
+public class AwsStateFile {
+
+    private static final int FILE_VERSION = 1;
+
+    private final Path file;
+
+    public AwsStateFile(AwsConfig awsConfig) {
+        this.file = Paths.get(awsConfig.getStateFile());
+    }
+
+    public void save(AwsState state) {
+        if (state.isEmpty()) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(state.refreshedAt() != null ? state.refreshedAt().toEpochMilli() : 0);
+            AwsStateCodec.writeSections(out, state.toEvent(this));
+        } catch (IOException e) {
+            log.error("Error saving dashboard state", e);
+            return;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error saving dashboard state", e);
+        }
+    }
+
+    public Optional<AwsState> load() {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != FILE_VERSION) {
+                log.info("Ignoring dashboard state with unknown version");
+                return Optional.empty();
+            }
+            Instant refreshedAt = Instant.ofEpochMilli(in.readLong());
+            var sections = AwsStateCodec.readSections(in, this);
+            return Optional.of(AwsState.restored(refreshedAt, sections));
+        } catch (IOException | RuntimeException e) {
+            log.error("Error loading dashboard state", e);
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.kartax.awslauncher.aws;
+
+import software.amazon.awssdk.services.ec2.model.Tag;
+
+import java.util.List;
+
+/**
+ * A region, optionally in another account reached by assuming {@code roleArn}.
+ * Configured as {@code region} or {@code region@roleArn}.
+ */
+public record AwsTarget(String region, String roleArn) {
+
+    /**
+     * Tag added to the lean resource models when more than one target is refreshed, holding the target's label.
+     */
+    public static final String TARGET_TAG = "dashboard:target";
+
+    public static AwsTarget parse(String value) {
+        int separator = value.indexOf('@');
+        return separator < 0
+                ? new AwsTarget(value.trim(), null)
+                : new AwsTarget(value.substring(0, separator).trim(), value.substring(separator + 1).trim());
+    }
+
+    /**
+     * The region, followed by the account id for targets in other accounts, e.g. {@code us-east-1/123456789012}.
+     */
+    public String label() {
+        if (roleArn == null) {
+            return region;
+        }
+        String[] arn = roleArn.split(":");
+        return region + "/" + (arn.length > 4 ? arn[4] : roleArn);
+    }
+
+    /**
+     * The label of the target a resource was fetched from, or null if only one target is refreshed.
+     */
+    public static String labelOf(List<Tag> tags) {
+        for (Tag tag : tags) {
+            if (TARGET_TAG.equals(tag.key())) {
+                return tag.value();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether a resource was fetched from the home region, which is where launches, AMIs and backups live.
+     */
+    public static boolean isHome(List<Tag> tags, String homeRegion) {
+        String label = labelOf(tags);
+        return label == null || label.equals(homeRegion);
+    }
+}
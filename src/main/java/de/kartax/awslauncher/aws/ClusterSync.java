@@ -0,0 +1,344 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.cluster.ClusterTransport;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the dashboards of all app nodes in step. Only the leader polls AWS; every update published on a node
+ * is relayed to the others, which merge it into their own {@link AwsStateCache} and push it to their views.
+ * <p>
+ * A starting node asks for a sync, which the leader answers with its full state. From then on updates only
+ * carry what changed: the added, changed and removed resources, the cost and the prices; unchanged sections
+ * and empty updates are not sent at all. Nodes that are not the leader forward refresh requests, e.g. after
+ * a launch, to the leader instead of calling AWS themselves.
+ * <p>
+ * Every section is stamped with the time the leader last fetched it from AWS. Patches, e.g. from state-change
+ * events, keep the stamp of the list they were applied to. A node drops sections stamped older than what it
+ * has, so a patch on an outdated list cannot overwrite a newer refresh; the leader then refreshes instead.
+ * Changes also carry the stamp of the list they were computed from. A node whose list has another stamp,
+ * e.g. because it missed a message, drops them and asks for a sync.
+ */
+@Slf4j
+@Service
+public class ClusterSync {
+
+    private static final byte STATE = 1;
+    private static final byte REFRESH = 2;
+    private static final byte SYNC = 3;
+    private static final long SYNC_RETRY_MILLIS = 10_000;
+
+    private final ClusterTransport transport;
+    private final AwsStateCache stateCache;
+    private final DashboardEventService eventService;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService publishExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cluster-publish");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<RefreshSection, Long> stamps = new EnumMap<>(RefreshSection.class);
+
+    private volatile Consumer<Duration> refreshHandler = delay -> { };
+    private long syncRequestedAt = Long.MIN_VALUE;
+
+    public ClusterSync(ClusterTransport transport, AwsStateCache stateCache, DashboardEventService eventService, MeterRegistry meterRegistry) {
+        this.transport = transport;
+        this.stateCache = stateCache;
+        this.eventService = eventService;
+        this.meterRegistry = meterRegistry;
+        transport.subscribe(this::receive);
+        eventService.setRelay(this::relay);
+        if (!transport.isLeader()) {
+            requestSync();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        publishExecutor.shutdownNow();
+    }
+
+    public boolean isLeader() {
+        return transport.isLeader();
+    }
+
+    public void onLeadership(Runnable callback) {
+        transport.onLeadership(callback);
+    }
+
+    /**
+     * Handles the refresh requests of the other nodes. Only called while this node is the leader.
+     */
+    public void onRefreshRequest(Consumer<Duration> handler) {
+        this.refreshHandler = handler;
+    }
+
+    /**
+     * Asks the leader to refresh after the given delay.
+     */
+    public void requestRefresh(Duration delay) {
+        publish("refresh", out -> {
+            out.writeByte(REFRESH);
+            out.writeLong(delay.toMillis());
+        });
+    }
+
+    /**
+     * Asks the leader for its full state, at most once every ten seconds.
+     */
+    private synchronized void requestSync() {
+        long now = System.currentTimeMillis();
+        if (syncRequestedAt != Long.MIN_VALUE && now - syncRequestedAt < SYNC_RETRY_MILLIS) {
+            return;
+        }
+        syncRequestedAt = now;
+        publish("sync", out -> out.writeByte(SYNC));
+    }
+
+    private void relay(DashboardUpdateEvent event) {
+        if (Boolean.TRUE.equals(event.getStale()) || event.isEmpty()) {
+            // a state restored from disk, every node has its own, or nothing changed
+            return;
+        }
+        var changes = new DashboardUpdateEvent(this);
+        changes.setInstances(event.getInstances());
+        changes.setVolumes(event.getVolumes());
+        changes.setSnapshots(event.getSnapshots());
+        changes.setInstanceChanges(event.getInstanceChanges());
+        changes.setVolumeChanges(event.getVolumeChanges());
+        changes.setSnapshotChanges(event.getSnapshotChanges());
+        changes.setCurrentMonthCost(event.getCurrentMonthCost());
+        changes.setInstanceTypesWithPrice(event.getInstanceTypesWithPrice());
+        Stamps sectionStamps = stamp(changes, event.getSource() instanceof AwsBackgroundTask);
+        publishState(event.getMessage(), stateCache.getState().refreshedAt(), changes, sectionStamps);
+    }
+
+    /**
+     * Sends the full cached state, leaving out sections restored from disk, which every node has its own of.
+     */
+    private void relayFullState() {
+        AwsState state = stateCache.getState();
+        if (state.isEmpty()) {
+            return;
+        }
+        var sections = state.toEvent(this);
+        sections.setStale(null);
+        state.restoredSections().forEach(section -> clear(sections, section));
+        publishState(null, state.refreshedAt(), sections, stamp(sections, false));
+    }
+
+    private void publishState(String message, Instant refreshedAt, DashboardUpdateEvent sections, Stamps sectionStamps) {
+        publish("state", out -> {
+            out.writeByte(STATE);
+            AwsStateCodec.writeString(out, message);
+            out.writeLong(refreshedAt != null ? refreshedAt.toEpochMilli() : Long.MIN_VALUE);
+            AwsStateCodec.writeSections(out, sections);
+            AwsStateCodec.writeChanges(out, sections);
+            for (RefreshSection section : RefreshSection.values()) {
+                out.writeLong(sectionStamps.base()[section.ordinal()]);
+                out.writeLong(sectionStamps.current()[section.ordinal()]);
+            }
+        });
+    }
+
+    /**
+     * Stamps freshly fetched sections with the current time, and patched ones with the stamp of the list they were
+     * applied to.
+     */
+    private synchronized Stamps stamp(DashboardUpdateEvent sections, boolean fetched) {
+        long now = System.currentTimeMillis();
+        var sectionStamps = new Stamps(new long[RefreshSection.values().length], new long[RefreshSection.values().length]);
+        for (RefreshSection section : RefreshSection.values()) {
+            sectionStamps.base()[section.ordinal()] = stamps.getOrDefault(section, Long.MIN_VALUE);
+            if (has(sections, section) && fetched) {
+                // never behind a stamp received from a former leader with a clock ahead of this one
+                stamps.merge(section, now, (known, fetchedAt) -> Math.max(known + 1, fetchedAt));
+            }
+            sectionStamps.current()[section.ordinal()] = stamps.getOrDefault(section, Long.MIN_VALUE);
+        }
+        return sectionStamps;
+    }
+
+    /**
+     * Removes the sections stamped older than the ones this node has, and the changes computed from another list
+     * than the one this node has. A list restored from disk has no stamp, so changes only fit it once a full list
+     * has replaced it. Keeps the stamps of the others.
+     */
+    private synchronized Dropped dropUnusable(DashboardUpdateEvent sections, Stamps sectionStamps, AwsState state) {
+        boolean outdated = false;
+        boolean missed = false;
+        for (RefreshSection section : RefreshSection.values()) {
+            if (!has(sections, section)) {
+                continue;
+            }
+            long known = stamps.getOrDefault(section, Long.MIN_VALUE);
+            if (sectionStamps.current()[section.ordinal()] < known) {
+                log.debug("Dropping outdated {} section", section.label());
+                clear(sections, section);
+                outdated = true;
+            } else if (hasChanges(sections, section) && (sectionStamps.base()[section.ordinal()] != known
+                    || !stamps.containsKey(section) && hasList(state, section))) {
+                log.debug("Dropping {} changes to a list this node does not have", section.label());
+                clear(sections, section);
+                missed = true;
+            } else {
+                stamps.put(section, sectionStamps.current()[section.ordinal()]);
+            }
+        }
+        return new Dropped(outdated, missed);
+    }
+
+    private static boolean has(DashboardUpdateEvent sections, RefreshSection section) {
+        return switch (section) {
+            case INSTANCES -> sections.getInstances() != null || sections.getInstanceChanges() != null;
+            case VOLUMES -> sections.getVolumes() != null || sections.getVolumeChanges() != null;
+            case SNAPSHOTS -> sections.getSnapshots() != null || sections.getSnapshotChanges() != null;
+            case COST -> sections.getCurrentMonthCost() != null;
+            case PRICES -> sections.getInstanceTypesWithPrice() != null;
+        };
+    }
+
+    private static boolean hasChanges(DashboardUpdateEvent sections, RefreshSection section) {
+        return switch (section) {
+            case INSTANCES -> sections.getInstances() == null && sections.getInstanceChanges() != null;
+            case VOLUMES -> sections.getVolumes() == null && sections.getVolumeChanges() != null;
+            case SNAPSHOTS -> sections.getSnapshots() == null && sections.getSnapshotChanges() != null;
+            case COST, PRICES -> false;
+        };
+    }
+
+    private static boolean hasList(AwsState state, RefreshSection section) {
+        return switch (section) {
+            case INSTANCES -> state.instances() != null;
+            case VOLUMES -> state.volumes() != null;
+            case SNAPSHOTS -> state.snapshots() != null;
+            case COST -> state.currentMonthCost() != null;
+            case PRICES -> state.instanceTypesWithPrice() != null;
+        };
+    }
+
+    private static void clear(DashboardUpdateEvent sections, RefreshSection section) {
+        switch (section) {
+            case INSTANCES -> {
+                sections.setInstances(null);
+                sections.setInstanceChanges(null);
+            }
+            case VOLUMES -> {
+                sections.setVolumes(null);
+                sections.setVolumeChanges(null);
+            }
+            case SNAPSHOTS -> {
+                sections.setSnapshots(null);
+                sections.setSnapshotChanges(null);
+            }
+            case COST -> sections.setCurrentMonthCost(null);
+            case PRICES -> sections.setInstanceTypesWithPrice(null);
+        }
+    }
+
+    private void publish(String type, Writer writer) {
+        try {
+            publishExecutor.execute(() -> {
+                var bytes = new ByteArrayOutputStream();
+                try (var out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+                    writer.write(out);
+                } catch (IOException e) {
+                    log.error("Error encoding cluster message", e);
+                    return;
+                }
+                meterRegistry.summary("cluster.message.bytes", "type", type).record(bytes.size());
+                transport.publish(bytes.toByteArray());
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Cluster sync stopped, not publishing {}", type);
+        }
+    }
+
+    private void receive(byte[] message) {
+        try (var in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(message)))) {
+            switch (in.readByte()) {
+                case STATE -> receiveState(in);
+                case REFRESH -> {
+                    Duration delay = Duration.ofMillis(in.readLong());
+                    if (transport.isLeader()) {
+                        refreshHandler.accept(delay);
+                    }
+                }
+                case SYNC -> {
+                    if (transport.isLeader()) {
+                        relayFullState();
+                    }
+                }
+                default -> log.debug("Ignoring unknown cluster message");
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Error applying cluster message", e);
+        }
+    }
+
+    private void receiveState(DataInputStream in) throws IOException {
+        String message = AwsStateCodec.readString(in);
+        long refreshedAtMillis = in.readLong();
+        Instant refreshedAt = refreshedAtMillis != Long.MIN_VALUE ? Instant.ofEpochMilli(refreshedAtMillis) : null;
+        DashboardUpdateEvent sections = AwsStateCodec.readSections(in, this);
+        AwsStateCodec.readChanges(in, sections);
+        var sectionStamps = new Stamps(new long[RefreshSection.values().length], new long[RefreshSection.values().length]);
+        for (RefreshSection section : RefreshSection.values()) {
+            sectionStamps.base()[section.ordinal()] = in.readLong();
+            sectionStamps.current()[section.ordinal()] = in.readLong();
+        }
+        Dropped dropped = dropUnusable(sections, sectionStamps, stateCache.getState());
+        if ((dropped.outdated() || dropped.missed()) && transport.isLeader()) {
+            // the sender changed another list than the leader's, fetch the change from AWS instead
+            refreshHandler.accept(Duration.ZERO);
+        } else if (dropped.missed()) {
+            requestSync();
+        }
+        boolean hasSections = Arrays.stream(RefreshSection.values()).anyMatch(section -> has(sections, section));
+        if (!hasSections) {
+            sections.setMessage(message);
+            eventService.deliverLocally(sections);
+            return;
+        }
+        DashboardUpdateEvent changes = stateCache.replicate(sections, refreshedAt);
+        changes.setMessage(message);
+        eventService.deliverLocally(changes);
+    }
+
+    /**
+     * Stamps of the lists changes were computed from, and of the lists they lead to.
+     */
+    private record Stamps(long[] base, long[] current) {
+    }
+
+    private record Dropped(boolean outdated, boolean missed) {
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
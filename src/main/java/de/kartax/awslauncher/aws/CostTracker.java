@@ -0,0 +1,251 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.budgets.BudgetsClient;
+import software.amazon.awssdk.services.budgets.model.DescribeBudgetsRequest;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * Month-to-date spend with a run-rate and month-end forecast.
+ * <p>
+ * Budgets only recalculates actual spend a few times a day, so its response is cached for
+ * {@code aws.budgetCacheHours} and every fetch is kept as a sample in a small local time series.
+ * Between fetches, running instances are added at their current spot price from {@link SpotPriceHistory},
+ * so a launch shows up in the spend right away. The run-rate is the slope of the samples over the last
+ * {@code aws.costRunRateDays}, counting from zero at the start of the month.
+ * <p>
+ * The result keeps the shape of the cost section: spend and limit, followed by the forecast and daily run-rate.
+ */
+@Slf4j
+@Component
+public class CostTracker {
+
+    public static final int SPEND = 0;
+    public static final int LIMIT = 1;
+    public static final int FORECAST = 2;
+    public static final int DAILY_RUN_RATE = 3;
+
+    private static final int FILE_VERSION = 1;
+    private static final double SECONDS_PER_HOUR = 3600.0;
+    private static final double SECONDS_PER_DAY = 86400.0;
+
+    private final BudgetsClient budgetsClient;
+    private final SpotPriceHistory spotPriceHistory;
+    private final AwsConfig awsConfig;
+    private final Path file;
+    private final Samples samples = new Samples();
+
+    public CostTracker(@Lazy BudgetsClient budgetsClient, SpotPriceHistory spotPriceHistory, AwsConfig awsConfig) {
+        this.budgetsClient = budgetsClient;
+        this.spotPriceHistory = spotPriceHistory;
+        this.awsConfig = awsConfig;
+        this.file = Paths.get(awsConfig.getCostHistoryFile());
+        load();
+    }
+
+    /**
+     * Fetches the budget unless the last sample is younger than the cache period.
+     */
+    public void refreshBudget() {
+        refreshBudget(Instant.now());
+    }
+
+    synchronized void refreshBudget(Instant now) {
+        if (samples.size > 0 && samples.lastTime() > now.minus(Duration.ofHours(awsConfig.getBudgetCacheHours())).getEpochSecond()) {
+            log.debug("budget cached from {}", Instant.ofEpochSecond(samples.lastTime()));
+            return;
+        }
+        log.debug("refreshBudget");
+        var response = budgetsClient.describeBudgets(DescribeBudgetsRequest.builder()
+                .accountId(awsConfig.getBudgetAccountId())
+                .build());
+        response.budgets().stream()
+                .filter(budget -> budget.budgetName().equals(awsConfig.getBudgetName()))
+                .findFirst()
+                .ifPresentOrElse(budget -> samples.add(now.getEpochSecond(),
+                                budget.calculatedSpend().actualSpend().amount().doubleValue(),
+                                budget.budgetLimit().amount().doubleValue()),
+                        () -> samples.add(now.getEpochSecond(), 0, 0));
+        samples.dropBefore(monthStart(now).minus(Duration.ofDays(31)).getEpochSecond());
+        save();
+    }
+
+    /**
+     * Spend, limit, forecast and daily run-rate, with the given running instances added since the last sample.
+     */
+    public List<BigDecimal> currentMonthCost(List<Instance> instances) {
+        return currentMonthCost(instances, Instant.now());
+    }
+
+    synchronized List<BigDecimal> currentMonthCost(List<Instance> instances, Instant now) {
+        long monthStart = monthStart(now).getEpochSecond();
+        long monthEnd = monthStart(now).atOffset(ZoneOffset.UTC).plusMonths(1).toInstant().getEpochSecond();
+        if (samples.size == 0) {
+            return List.of(BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+        }
+        double limit = samples.limits[samples.size - 1];
+        int last = samples.size - 1;
+        if (samples.times[last] < monthStart) {
+            // nothing fetched this month yet, Budgets starts over from zero
+            last = -1;
+        }
+        long sampledAt = last >= 0 ? samples.times[last] : monthStart;
+        double sampledSpend = last >= 0 ? samples.spends[last] : 0;
+
+        double runRate = runRatePerSecond(last, monthStart, now.getEpochSecond());
+        double spend = sampledSpend + runningCost(instances, Math.max(sampledAt, monthStart), now);
+        double forecast = spend + runRate * Math.max(0, monthEnd - now.getEpochSecond());
+        return List.of(amount(spend), amount(limit), amount(forecast), amount(runRate * SECONDS_PER_DAY));
+    }
+
+    private double runRatePerSecond(int last, long monthStart, long now) {
+        if (last < 0) {
+            return 0;
+        }
+        long windowStart = Math.max(monthStart, samples.times[last] - Duration.ofDays(awsConfig.getCostRunRateDays()).toSeconds());
+        // the month starts at zero, which counts as a sample while the window reaches back that far
+        long fromTime = monthStart;
+        double fromSpend = 0;
+        for (int i = 0; i < last && windowStart > monthStart; i++) {
+            if (samples.times[i] >= windowStart) {
+                fromTime = samples.times[i];
+                fromSpend = samples.spends[i];
+                break;
+            }
+        }
+        if (samples.times[last] <= fromTime) {
+            return 0;
+        }
+        return Math.max(0, (samples.spends[last] - fromSpend) / (samples.times[last] - fromTime));
+    }
+
+    private double runningCost(List<Instance> instances, long since, Instant now) {
+        if (instances == null) {
+            return 0;
+        }
+        double cost = 0;
+        for (Instance instance : instances) {
+            if (instance.state() == null || instance.state().name() != InstanceStateName.RUNNING) {
+                continue;
+            }
+            OptionalDouble price = spotPriceHistory.current(instance.instanceTypeAsString());
+            if (price.isEmpty()) {
+                continue;
+            }
+            long from = instance.launchTime() != null ? Math.max(since, instance.launchTime().getEpochSecond()) : since;
+            cost += price.getAsDouble() * Math.max(0, now.getEpochSecond() - from) / SECONDS_PER_HOUR;
+        }
+        return cost;
+    }
+
+    private static Instant monthStart(Instant now) {
+        return YearMonth.from(now.atOffset(ZoneOffset.UTC)).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    private static BigDecimal amount(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private void save() {
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_VERSION);
+                out.writeInt(samples.size);
+                for (int i = 0; i < samples.size; i++) {
+                    out.writeLong(samples.times[i]);
+                    out.writeDouble(samples.spends[i]);
+                    out.writeDouble(samples.limits[i]);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error saving cost history", e);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) {
+                log.info("Ignoring cost history with unknown version");
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                samples.add(in.readLong(), in.readDouble(), in.readDouble());
+            }
+        } catch (IOException e) {
+            log.error("Error loading cost history", e);
+            samples.size = 0;
+        }
+    }
+
+    /**
+     * Budget fetches, oldest first.
+     */
+    private static final class Samples {
+
+        private long[] times = new long[16];
+        private double[] spends = new double[16];
+        private double[] limits = new double[16];
+        private int size;
+
+        void add(long time, double spend, double limit) {
+            if (size > 0 && time <= times[size - 1]) {
+                return;
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                spends = Arrays.copyOf(spends, size * 2);
+                limits = Arrays.copyOf(limits, size * 2);
+            }
+            times[size] = time;
+            spends[size] = spend;
+            limits[size] = limit;
+            size++;
+        }
+
+        long lastTime() {
+            return times[size - 1];
+        }
+
+        void dropBefore(long time) {
+            int first = 0;
+            while (first < size - 1 && times[first] < time) {
+                first++;
+            }
+            if (first > 0) {
+                System.arraycopy(times, first, times, 0, size - first);
+                System.arraycopy(spends, first, spends, 0, size - first);
+                System.arraycopy(limits, first, limits, 0, size - first);
+                size -= first;
+            }
+        }
+    }
+}
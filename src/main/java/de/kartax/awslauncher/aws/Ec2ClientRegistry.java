@@ -0,0 +1,124 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.sts.StsClient;
+import software.amazon.awssdk.services.sts.auth.StsAssumeRoleCredentialsProvider;
+import software.amazon.awssdk.utils.IoUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * EC2 clients for all configured targets ({@code aws.targets}). The home region without a role uses the
+ * regular {@link Ec2Client} bean; the others are created on first use and share its HTTP transport.
+ * Calls per target are limited to {@code aws.targetConcurrency}, so one account is not flooded while
+ * refreshing several sections at once.
+ */
+@Slf4j
+@Component
+public class Ec2ClientRegistry {
+
+    private final Ec2Client homeClient;
+    private final SdkHttpClient httpClient;
+    private final AwsCredentialsProvider credentialsProvider;
+    private final AwsCallMetrics callMetrics;
+    private final AwsConfig awsConfig;
+    private final List<AwsTarget> targets;
+    private final Map<AwsTarget, Semaphore> permits = new ConcurrentHashMap<>();
+    private final Map<AwsTarget, Ec2Client> clients = new ConcurrentHashMap<>();
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    public Ec2ClientRegistry(@Lazy Ec2Client homeClient, @Lazy SdkHttpClient httpClient, AwsCredentialsProvider credentialsProvider, AwsCallMetrics callMetrics, AwsConfig awsConfig) {
+        this.homeClient = homeClient;
+        this.httpClient = httpClient;
+        this.credentialsProvider = credentialsProvider;
+        this.callMetrics = callMetrics;
+        this.awsConfig = awsConfig;
+        this.targets = awsConfig.getTargets().isEmpty()
+                ? List.of(new AwsTarget(awsConfig.getAwsRegion(), null))
+                : awsConfig.getTargets().stream().map(AwsTarget::parse).distinct().toList();
+        for (AwsTarget target : targets) {
+            permits.put(target, new Semaphore(awsConfig.getTargetConcurrency()));
+        }
+    }
+
+    public List<AwsTarget> targets() {
+        return targets;
+    }
+
+    public boolean isMultiTarget() {
+        return targets.size() > 1;
+    }
+
+    /**
+     * The target tag value of home region resources, or null if only one target is refreshed.
+     */
+    public String homeLabel() {
+        return isMultiTarget() ? awsConfig.getAwsRegion() : null;
+    }
+
+    public Ec2Client ec2(AwsTarget target) {
+        if (target.roleArn() == null && target.region().equals(awsConfig.getAwsRegion())) {
+            return homeClient;
+        }
+        return clients.computeIfAbsent(target, this::createClient);
+    }
+
+    /**
+     * Runs the call once one of the target's permits is free.
+     */
+    public <T> T withPermit(AwsTarget target, Supplier<T> call) {
+        Semaphore semaphore = permits.get(target);
+        semaphore.acquireUninterruptibly();
+        try {
+            return call.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    private synchronized Ec2Client createClient(AwsTarget target) {
+        log.debug("Creating EC2 client for {}", target.label());
+        AwsCredentialsProvider credentials = credentialsProvider;
+        if (target.roleArn() != null) {
+            StsClient stsClient = awsConfig.withEndpoint(StsClient.builder())
+                    .httpClient(httpClient)
+                    .credentialsProvider(credentialsProvider)
+                    .region(Region.of(target.region()))
+                    .build();
+            StsAssumeRoleCredentialsProvider assumeRole = StsAssumeRoleCredentialsProvider.builder()
+                    .stsClient(stsClient)
+                    .refreshRequest(request -> request.roleArn(target.roleArn()).roleSessionName("aws-launcher"))
+                    .build();
+            closeables.add(assumeRole);
+            closeables.add(stsClient);
+            credentials = assumeRole;
+        }
+        Ec2Client client = awsConfig.withEndpoint(Ec2Client.builder())
+                .httpClient(httpClient)
+                .credentialsProvider(credentials)
+                .overrideConfiguration(awsConfig.clientOverrides(callMetrics))
+                .region(Region.of(target.region()))
+                .build();
+        closeables.add(client);
+        return client;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        closeables.forEach(closeable -> IoUtils.closeQuietly(closeable, null));
+        closeables.clear();
+    }
+}
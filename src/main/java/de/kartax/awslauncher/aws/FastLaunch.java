@@ -0,0 +1,254 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.ArchitectureValues;
+import software.amazon.awssdk.services.ec2.model.BlockDeviceMapping;
+import software.amazon.awssdk.services.ec2.model.DeregisterImageRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeImagesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeInstancesRequest;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.Image;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceInterruptionBehavior;
+import software.amazon.awssdk.services.ec2.model.MarketType;
+import software.amazon.awssdk.services.ec2.model.RegisterImageRequest;
+import software.amazon.awssdk.services.ec2.model.ResourceType;
+import software.amazon.awssdk.services.ec2.model.RunInstancesRequest;
+import software.amazon.awssdk.services.ec2.model.ShutdownBehavior;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.SpotInstanceType;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.TagSpecification;
+import software.amazon.awssdk.services.ec2.model.VirtualizationType;
+import software.amazon.awssdk.services.ec2.model.VolumeType;
+
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Launches straight from an AMI kept registered for the latest GamingRig snapshot, skipping the
+ * describe and register steps of the launch state machine. The AMI is tagged with its source snapshot,
+ * so it is found again after a restart.
+ * <p>
+ * A registered AMI keeps its snapshot from being deleted. As soon as a newer snapshot shows up, even
+ * while it is still pending, the AMI is deregistered so the backup state machine can delete the old
+ * snapshot. A new AMI is registered once the newer snapshot has completed. AMIs that failed to deregister
+ * and older launch AMIs found at startup are deregistered on every reconcile until that succeeds.
+ */
+@Slf4j
+@Service
+public class FastLaunch {
+
+    static final String IMAGE_NAME_TAG = "GamingRig-Launch";
+    static final String SOURCE_SNAPSHOT_TAG = "SourceSnapshot";
+    private static final String SNAPSHOT_NAME = "GamingRig";
+    private static final String ROOT_DEVICE_NAME = "/dev/sda1";
+
+    private final Ec2Client ec2Client;
+    private final AwsConfig awsConfig;
+
+    private final Set<String> toDeregister = new LinkedHashSet<>();
+    private CachedImage cached;
+    private boolean loaded;
+
+    record CachedImage(String snapshotId, String imageId) {
+    }
+
+    public FastLaunch(@Lazy Ec2Client ec2Client, AwsConfig awsConfig) {
+        this.ec2Client = ec2Client;
+        this.awsConfig = awsConfig;
+    }
+
+    /**
+     * Brings the cached AMI in line with the latest GamingRig snapshot. Called after every snapshot refresh.
+     */
+    public synchronized void reconcile(List<Snapshot> snapshots) {
+        if (!awsConfig.isFastLaunch()) {
+            return;
+        }
+        Optional<Snapshot> latest = snapshots.stream()
+                .filter(snapshot -> SNAPSHOT_NAME.equals(ResourceNames.nameOrId(snapshot.tags(), null)))
+                .max(Comparator.comparing(Snapshot::startTime));
+        if (latest.isEmpty()) {
+            return;
+        }
+        CachedImage image = cachedImage();
+        if (image != null && !latest.get().snapshotId().equals(image.snapshotId())) {
+            log.debug("Snapshot {} replaces {}, deregistering {}", latest.get().snapshotId(), image.snapshotId(), image.imageId());
+            toDeregister.add(image.imageId());
+            cached = null;
+        }
+        toDeregister.removeIf(this::deregister);
+        if (cached == null && latest.get().state() == SnapshotState.COMPLETED) {
+            cached = register(latest.get().snapshotId());
+        }
+    }
+
+    /**
+     * Launches from the cached AMI. EC2 returns the instance already started for a repeated client token
+     * instead of starting a second one.
+     *
+     * @return the id of the new instance, or empty if there is no cached AMI and the slow path has to be used
+     */
+    public Optional<String> launch(String name, String instanceType, String clientToken) {
+        CachedImage image;
+        synchronized (this) {
+            image = cachedImage();
+        }
+        if (image == null) {
+            return Optional.empty();
+        }
+        try {
+            var response = ec2Client.runInstances(runInstancesRequest(image.imageId(), name, instanceType, clientToken));
+            return Optional.of(response.instances().get(0).instanceId());
+        } catch (Ec2Exception e) {
+            log.debug("Error launching from {}", image.imageId(), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The instances named like the rig, terminated ones included, so a launch can tell the client tokens
+     * already used: RunInstances returns the instance of a used token again instead of starting one.
+     */
+    public List<Instance> launchesOf(String name) {
+        try {
+            return ec2Client.describeInstances(DescribeInstancesRequest.builder()
+                            .filters(Filter.builder().name("tag:Name").values(name).build())
+                            .build())
+                    .reservations().stream()
+                    .flatMap(reservation -> reservation.instances().stream())
+                    .toList();
+        } catch (Ec2Exception e) {
+            log.debug("Error looking up launches of {}", name, e);
+            return List.of();
+        }
+    }
+
+    private CachedImage cachedImage() {
+        if (!loaded) {
+            loaded = true;
+            try {
+                List<Image> images = ec2Client.describeImages(DescribeImagesRequest.builder()
+                                .owners("self")
+                                .filters(Filter.builder().name("tag:Name").values(IMAGE_NAME_TAG).build())
+                                .build())
+                        .images().stream()
+                        .sorted(Comparator.comparing(Image::creationDate).reversed())
+                        .toList();
+                cached = images.isEmpty() ? null : new CachedImage(sourceSnapshot(images.get(0)), images.get(0).imageId());
+                images.stream().skip(1).map(Image::imageId).forEach(toDeregister::add);
+            } catch (Ec2Exception e) {
+                log.debug("Error looking up cached image", e);
+                loaded = false;
+            }
+        }
+        return cached;
+    }
+
+    private CachedImage register(String snapshotId) {
+        try {
+            var response = ec2Client.registerImage(RegisterImageRequest.builder()
+                    .name(SNAPSHOT_NAME + "-" + snapshotId)
+                    .architecture(ArchitectureValues.X86_64)
+                    .rootDeviceName(ROOT_DEVICE_NAME)
+                    .virtualizationType(VirtualizationType.HVM.toString())
+                    .blockDeviceMappings(BlockDeviceMapping.builder()
+                            .deviceName(ROOT_DEVICE_NAME)
+                            .ebs(ebs -> ebs.snapshotId(snapshotId))
+                            .build())
+                    .tagSpecifications(TagSpecification.builder()
+                            .resourceType(ResourceType.IMAGE)
+                            .tags(tag("Name", IMAGE_NAME_TAG), tag(SOURCE_SNAPSHOT_TAG, snapshotId))
+                            .build())
+                    .build());
+            log.debug("Registered {} for snapshot {}", response.imageId(), snapshotId);
+            return new CachedImage(snapshotId, response.imageId());
+        } catch (Ec2Exception e) {
+            log.debug("Error registering image for {}", snapshotId, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return false if the AMI is still registered and has to be retried
+     */
+    private boolean deregister(String imageId) {
+        try {
+            ec2Client.deregisterImage(DeregisterImageRequest.builder().imageId(imageId).build());
+            return true;
+        } catch (Ec2Exception e) {
+            String errorCode = e.awsErrorDetails() != null ? e.awsErrorDetails().errorCode() : null;
+            if ("InvalidAMIID.NotFound".equals(errorCode) || "InvalidAMIID.Unavailable".equals(errorCode)) {
+                return true;
+            }
+            log.debug("Error deregistering {}, retrying with the next snapshot refresh", imageId, e);
+            return false;
+        }
+    }
+
+    /**
+     * The snapshot the AMI was registered for, from its tag or, for an AMI without it, its root device.
+     */
+    private static String sourceSnapshot(Image image) {
+        String snapshotId = tagValue(image.tags(), SOURCE_SNAPSHOT_TAG);
+        if (snapshotId != null) {
+            return snapshotId;
+        }
+        return image.blockDeviceMappings().stream()
+                .filter(mapping -> mapping.ebs() != null && mapping.ebs().snapshotId() != null)
+                .map(mapping -> mapping.ebs().snapshotId())
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Same parameters as the LaunchInstance step of aws-step-function-launch.json.
+     */
+    RunInstancesRequest runInstancesRequest(String imageId, String name, String instanceType, String clientToken) {
+        return RunInstancesRequest.builder()
+                .imageId(imageId)
+                .instanceType(instanceType)
+                .minCount(1)
+                .maxCount(1)
+                .instanceInitiatedShutdownBehavior(ShutdownBehavior.TERMINATE)
+                .instanceMarketOptions(market -> market
+                        .marketType(MarketType.SPOT)
+                        .spotOptions(spot -> spot
+                                .spotInstanceType(SpotInstanceType.ONE_TIME)
+                                .instanceInterruptionBehavior(InstanceInterruptionBehavior.TERMINATE)))
+                .blockDeviceMappings(BlockDeviceMapping.builder()
+                        .deviceName(ROOT_DEVICE_NAME)
+                        .ebs(ebs -> ebs
+                                .volumeSize(300)
+                                .volumeType(VolumeType.GP3)
+                                .deleteOnTermination(false)
+                                .throughput(500)
+                                .iops(5000))
+                        .build())
+                .tagSpecifications(
+                        TagSpecification.builder().resourceType(ResourceType.INSTANCE).tags(tag("Name", name)).build(),
+                        TagSpecification.builder().resourceType(ResourceType.VOLUME).tags(tag("Name", name)).build())
+                .securityGroupIds(awsConfig.getLaunchSecurityGroupId())
+                .keyName(awsConfig.getLaunchKeyName())
+                .clientToken(clientToken)
+                .build();
+    }
+
+    private static Tag tag(String key, String value) {
+        return Tag.builder().key(key).value(value).build();
+    }
+
+    private static String tagValue(List<Tag> tags, String key) {
+        return tags.stream().filter(tag -> key.equals(tag.key())).map(Tag::value).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,136 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeInstanceTypesRequest;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.GpuDeviceInfo;
+import software.amazon.awssdk.services.ec2.model.InstanceTypeInfo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Candidate instance types for launching, discovered with DescribeInstanceTypes and filtered by the
+ * GPU, vCPU and memory criteria from the configuration. The result rarely changes, so it is cached
+ * on disk and only rediscovered once the configured TTL has passed or the criteria changed.
+ */
+@Slf4j
+@Service
+public class InstanceTypeCatalog {
+
+    private static final String FETCHED_PREFIX = "# fetched ";
+    private static final String CRITERIA_PREFIX = "# criteria ";
+
+    private final Ec2Client ec2Client;
+    private final AwsConfig awsConfig;
+    private final Path file;
+
+    private List<String> instanceTypes;
+    private Instant fetchedAt;
+
+    public InstanceTypeCatalog(@Lazy Ec2Client ec2Client, AwsConfig awsConfig) {
+        this.ec2Client = ec2Client;
+        this.awsConfig = awsConfig;
+        this.file = Paths.get(awsConfig.getCatalogFile());
+    }
+
+    public synchronized List<String> getInstanceTypes() {
+        Duration ttl = Duration.ofHours(awsConfig.getCatalogTtlHours());
+        if (instanceTypes == null) {
+            load();
+        }
+        if (instanceTypes == null || fetchedAt.plus(ttl).isBefore(Instant.now())) {
+            try {
+                instanceTypes = discover();
+                fetchedAt = Instant.now();
+                save();
+            } catch (RuntimeException e) {
+                if (instanceTypes == null) {
+                    throw e;
+                }
+                log.info("Keeping expired instance type catalog: {}", e.getMessage());
+            }
+        }
+        return instanceTypes;
+    }
+
+    private List<String> discover() {
+        log.debug("discover instance types {}", criteria());
+        var request = DescribeInstanceTypesRequest.builder()
+                .filters(
+                        Filter.builder().name("instance-type").values(awsConfig.getCatalogInstanceTypes()).build(),
+                        Filter.builder().name("supported-usage-class").values("spot").build(),
+                        Filter.builder().name("processor-info.supported-architecture").values("x86_64").build())
+                .build();
+
+        return ec2Client.describeInstanceTypesPaginator(request)
+                .stream()
+                .flatMap(response -> response.instanceTypes().stream())
+                .filter(this::matches)
+                .sorted(Comparator.comparing((InstanceTypeInfo info) -> info.vCpuInfo().defaultVCpus())
+                        .thenComparing(InstanceTypeInfo::instanceTypeAsString))
+                .map(InstanceTypeInfo::instanceTypeAsString)
+                .toList();
+    }
+
+    private boolean matches(InstanceTypeInfo info) {
+        int gpus = info.gpuInfo() == null ? 0 : info.gpuInfo().gpus().stream()
+                .mapToInt(GpuDeviceInfo::count)
+                .sum();
+        int vCpus = info.vCpuInfo().defaultVCpus();
+        long memoryMiB = info.memoryInfo().sizeInMiB();
+        return gpus >= awsConfig.getCatalogMinGpus()
+                && vCpus >= awsConfig.getCatalogMinVcpus()
+                && vCpus <= awsConfig.getCatalogMaxVcpus()
+                && memoryMiB >= awsConfig.getCatalogMinMemoryMiB();
+    }
+
+    private String criteria() {
+        return String.join(",", awsConfig.getCatalogInstanceTypes())
+                + " gpus>=" + awsConfig.getCatalogMinGpus()
+                + " vcpus=" + awsConfig.getCatalogMinVcpus() + ".." + awsConfig.getCatalogMaxVcpus()
+                + " memoryMiB>=" + awsConfig.getCatalogMinMemoryMiB();
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file);
+            if (lines.size() < 2
+                    || !lines.get(0).startsWith(FETCHED_PREFIX)
+                    || !lines.get(1).equals(CRITERIA_PREFIX + criteria())) {
+                log.debug("Ignoring instance type catalog with other criteria");
+                return;
+            }
+            fetchedAt = Instant.ofEpochSecond(Long.parseLong(lines.get(0).substring(FETCHED_PREFIX.length())));
+            instanceTypes = List.copyOf(lines.subList(2, lines.size()));
+        } catch (IOException | NumberFormatException e) {
+            log.error("Error loading instance type catalog", e);
+        }
+    }
+
+    private void save() {
+        List<String> lines = new ArrayList<>();
+        lines.add(FETCHED_PREFIX + fetchedAt.getEpochSecond());
+        lines.add(CRITERIA_PREFIX + criteria());
+        lines.addAll(instanceTypes);
+        try {
+            Files.write(file, lines);
+        } catch (IOException e) {
+            log.error("Error saving instance type catalog", e);
+        }
+    }
+}
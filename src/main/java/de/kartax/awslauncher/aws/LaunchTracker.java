@@ -0,0 +1,253 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.sfn.SfnClient;
+import software.amazon.awssdk.services.sfn.model.ExecutionDoesNotExistException;
+import software.amazon.awssdk.services.sfn.model.ExecutionStatus;
+import software.amazon.awssdk.services.sfn.model.GetExecutionHistoryRequest;
+import software.amazon.awssdk.services.sfn.model.GetExecutionHistoryResponse;
+import software.amazon.awssdk.services.sfn.model.HistoryEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Follows a launch state machine execution through its execution history and reports every step and
+ * how long it took. Step durations are recorded as the {@code aws.launch.step} timer, so slow steps stand
+ * out over many launches.
+ * <p>
+ * The history is read newest first and only until the last event already seen, so every poll costs
+ * one request while nothing happens. Polls back off while the execution is quiet.
+ * <p>
+ * Tracking gives up after {@code aws.launchTimeoutMinutes}, on an error that retrying cannot fix, e.g.
+ * missing permissions, or after too many errors in a row, so the returned future always completes.
+ */
+@Slf4j
+@Service
+public class LaunchTracker {
+
+    private static final int HISTORY_PAGE_SIZE = 100;
+    private static final int MAX_ERRORS_IN_A_ROW = 10;
+
+    private final SfnClient sfnClient;
+    private final DashboardEventService eventService;
+    private final TaskScheduler taskScheduler;
+    private final AwsConfig awsConfig;
+    private final MeterRegistry meterRegistry;
+
+    public LaunchTracker(@Lazy SfnClient sfnClient, DashboardEventService eventService, TaskScheduler taskScheduler, AwsConfig awsConfig, MeterRegistry meterRegistry) {
+        this.sfnClient = sfnClient;
+        this.eventService = eventService;
+        this.taskScheduler = taskScheduler;
+        this.awsConfig = awsConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Starts following the execution. The future completes with the final status of the execution.
+     */
+    public CompletableFuture<ExecutionStatus> track(String executionArn) {
+        Tracking tracking = new Tracking(executionArn, Duration.ofSeconds(awsConfig.getLaunchPollMinSeconds()),
+                Instant.now().plus(Duration.ofMinutes(awsConfig.getLaunchTimeoutMinutes())));
+        schedule(tracking);
+        return tracking.result;
+    }
+
+    private void schedule(Tracking tracking) {
+        taskScheduler.schedule(() -> {
+            boolean done;
+            try {
+                done = poll(tracking);
+            } catch (RuntimeException e) {
+                log.debug("Error tracking {}", tracking.executionArn, e);
+                tracking.result.completeExceptionally(e);
+                done = true;
+            }
+            if (!done) {
+                schedule(tracking);
+            }
+        }, Instant.now().plus(tracking.delay));
+    }
+
+    /**
+     * Reads and reports the events since the last poll and adjusts the delay until the next one.
+     *
+     * @return true once the execution has ended and tracking is complete
+     */
+    boolean poll(Tracking tracking) {
+        if (Instant.now().isAfter(tracking.deadline)) {
+            return giveUp(tracking, new IllegalStateException("Launch still not done after "
+                    + awsConfig.getLaunchTimeoutMinutes() + " minutes, no longer following it"));
+        }
+        List<HistoryEvent> events;
+        try {
+            events = newEvents(tracking);
+        } catch (ExecutionDoesNotExistException e) {
+            log.debug("Execution {} does not exist", tracking.executionArn);
+            tracking.result.completeExceptionally(e);
+            return true;
+        } catch (SdkException e) {
+            log.debug("Error reading history of {}", tracking.executionArn, e);
+            if (!isRetryable(e) || ++tracking.errors >= MAX_ERRORS_IN_A_ROW) {
+                return giveUp(tracking, e);
+            }
+            tracking.delay = nextDelay(tracking.delay);
+            return false;
+        }
+        tracking.errors = 0;
+
+        for (HistoryEvent event : events) {
+            tracking.lastEventId = event.id();
+            ExecutionStatus status = handle(tracking, event);
+            if (status != null) {
+                eventService.broadcastMessageOnlyEvent(this, summary(tracking, status, event.timestamp()));
+                tracking.result.complete(status);
+                return true;
+            }
+        }
+        tracking.delay = events.isEmpty() ? nextDelay(tracking.delay) : Duration.ofSeconds(awsConfig.getLaunchPollMinSeconds());
+        return false;
+    }
+
+    private boolean giveUp(Tracking tracking, Exception error) {
+        eventService.broadcastMessageOnlyEvent(this, "Stopped following the launch: " + error.getMessage());
+        tracking.result.completeExceptionally(error);
+        return true;
+    }
+
+    /**
+     * Throttling, server errors and network problems may pass; any other error from the service, like a
+     * missing permission, fails the same way on every poll.
+     */
+    private static boolean isRetryable(SdkException e) {
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return true;
+    }
+
+    private List<HistoryEvent> newEvents(Tracking tracking) {
+        List<HistoryEvent> events = new ArrayList<>();
+        String nextToken = null;
+        do {
+            GetExecutionHistoryResponse response = sfnClient.getExecutionHistory(GetExecutionHistoryRequest.builder()
+                    .executionArn(tracking.executionArn)
+                    .reverseOrder(true)
+                    .includeExecutionData(false)
+                    .maxResults(HISTORY_PAGE_SIZE)
+                    .nextToken(nextToken)
+                    .build());
+            for (HistoryEvent event : response.events()) {
+                if (event.id() <= tracking.lastEventId) {
+                    Collections.reverse(events);
+                    return events;
+                }
+                events.add(event);
+            }
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        Collections.reverse(events);
+        return events;
+    }
+
+    private ExecutionStatus handle(Tracking tracking, HistoryEvent event) {
+        switch (event.type()) {
+            case EXECUTION_STARTED -> tracking.startedAt = event.timestamp();
+            case TASK_STATE_ENTERED, PASS_STATE_ENTERED, WAIT_STATE_ENTERED, CHOICE_STATE_ENTERED, PARALLEL_STATE_ENTERED, MAP_STATE_ENTERED -> {
+                String step = event.stateEnteredEventDetails().name();
+                tracking.enteredAt.put(step, event.timestamp());
+                eventService.broadcastMessageOnlyEvent(this, "Launch: " + step + "...");
+            }
+            case TASK_STATE_EXITED, PASS_STATE_EXITED, WAIT_STATE_EXITED, CHOICE_STATE_EXITED, PARALLEL_STATE_EXITED, MAP_STATE_EXITED -> {
+                String step = event.stateExitedEventDetails().name();
+                Instant enteredAt = tracking.enteredAt.remove(step);
+                if (enteredAt != null) {
+                    Duration duration = Duration.between(enteredAt, event.timestamp());
+                    tracking.stepDurations.merge(step, duration, Duration::plus);
+                    meterRegistry.timer("aws.launch.step", "step", step).record(duration);
+                    eventService.broadcastMessageOnlyEvent(this, "Launch: " + step + " took " + format(duration));
+                }
+            }
+            case TASK_FAILED -> eventService.broadcastMessageOnlyEvent(this, "Launch: " + event.taskFailedEventDetails().error()
+                    + " " + event.taskFailedEventDetails().cause());
+            case EXECUTION_SUCCEEDED -> {
+                return ExecutionStatus.SUCCEEDED;
+            }
+            case EXECUTION_FAILED -> {
+                return ExecutionStatus.FAILED;
+            }
+            case EXECUTION_TIMED_OUT -> {
+                return ExecutionStatus.TIMED_OUT;
+            }
+            case EXECUTION_ABORTED -> {
+                return ExecutionStatus.ABORTED;
+            }
+            default -> {
+            }
+        }
+        return null;
+    }
+
+    private String summary(Tracking tracking, ExecutionStatus status, Instant endedAt) {
+        String steps = tracking.stepDurations.entrySet().stream()
+                .map(step -> step.getKey() + " " + format(step.getValue()))
+                .collect(Collectors.joining(", "));
+        String total = tracking.startedAt != null ? " in " + format(Duration.between(tracking.startedAt, endedAt)) : "";
+        return "Launch " + status.toString().toLowerCase() + total + (steps.isEmpty() ? "" : ": " + steps);
+    }
+
+    private Duration nextDelay(Duration delay) {
+        Duration doubled = delay.multipliedBy(2);
+        Duration max = Duration.ofSeconds(awsConfig.getLaunchPollMaxSeconds());
+        return doubled.compareTo(max) > 0 ? max : doubled;
+    }
+
+    private static String format(Duration duration) {
+        return duration.toMinutes() > 0
+                ? duration.toMinutes() + "m " + duration.toSecondsPart() + "s"
+                : duration.toSeconds() + "s";
+    }
+
+    static class Tracking {
+
+        private final String executionArn;
+        private final CompletableFuture<ExecutionStatus> result = new CompletableFuture<>();
+        private final Map<String, Instant> enteredAt = new HashMap<>();
+        private final Map<String, Duration> stepDurations = new LinkedHashMap<>();
+        private final Instant deadline;
+        private long lastEventId;
+        private Instant startedAt;
+        private Duration delay;
+        private int errors;
+
+        Tracking(String executionArn, Duration delay, Instant deadline) {
+            this.executionArn = executionArn;
+            this.delay = delay;
+            this.deadline = deadline;
+        }
+
+        Duration getDelay() {
+            return delay;
+        }
+
+        CompletableFuture<ExecutionStatus> getResult() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package de.kartax.awslauncher.aws;
+
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.Volume;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies of the EC2 models with only the fields the dashboard uses (the same ones {@link AwsStateFile} stores).
+ * Instances in particular carry network interfaces, block device mappings and more that would otherwise stay
+ * on the heap for as long as they are shown.
+ */
+public final class LeanResources {
+
+    private LeanResources() {
+    }
+
+    public static Instance instance(Instance instance) {
+        return instance(instance, null);
+    }
+
+    public static Volume volume(Volume volume) {
+        return volume(volume, null);
+    }
+
+    public static Snapshot snapshot(Snapshot snapshot) {
+        return snapshot(snapshot, null);
+    }
+
+    /**
+     * @param target label of the target the instance was fetched from, added as {@link AwsTarget#TARGET_TAG} unless null
+     */
+    public static Instance instance(Instance instance, String target) {
+        return Instance.builder()
+                .instanceId(instance.instanceId())
+                .instanceType(instance.instanceTypeAsString())
+                .state(instance.state())
+                .launchTime(instance.launchTime())
+                .tags(withTarget(instance.tags(), target))
+                .build();
+    }
+
+    public static Volume volume(Volume volume, String target) {
+        return Volume.builder()
+                .volumeId(volume.volumeId())
+                .size(volume.size())
+                .state(volume.stateAsString())
+                .availabilityZone(volume.availabilityZone())
+                .createTime(volume.createTime())
+                .tags(withTarget(volume.tags(), target))
+                .build();
+    }
+
+    public static Snapshot snapshot(Snapshot snapshot, String target) {
+        return Snapshot.builder()
+                .snapshotId(snapshot.snapshotId())
+                .volumeId(snapshot.volumeId())
+                .volumeSize(snapshot.volumeSize())
+                .progress(snapshot.progress())
+                .state(snapshot.stateAsString())
+                .startTime(snapshot.startTime())
+                .tags(withTarget(snapshot.tags(), target))
+                .build();
+    }
+
+    private static List<Tag> withTarget(List<Tag> tags, String target) {
+        if (target == null) {
+            return tags;
+        }
+        List<Tag> tagged = new ArrayList<>(tags.size() + 1);
+        tagged.addAll(tags);
+        tagged.add(Tag.builder().key(AwsTarget.TARGET_TAG).value(target).build());
+        return tagged;
+    }
+}
@@ -0,0 +1,17 @@
+package de.kartax.awslauncher.aws;
+
+/**
+ * The independent parts of a dashboard refresh. Each section is fetched on its own
+ * and reports its own errors, so one slow or failing AWS call does not hold back the others.
+ */
+public enum RefreshSection {
+    INSTANCES,
+    VOLUMES,
+    SNAPSHOTS,
+    COST,
+    PRICES;
+
+    public String label() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,138 @@
+package de.kartax.awslauncher.aws;
+
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.Volume;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Read-only index over a resource list, built once per refresh and shared by all views.
+ * Names, sizes, times and states are extracted up front into columnar arrays, so lazy grids
+ * can sort, filter and page on the server without touching the SDK model tags again.
+ */
+public final class ResourceIndex<T> {
+
+    public static final String SORT_NAME = "name";
+    public static final String SORT_SIZE = "size";
+    public static final String SORT_TIME = "time";
+    public static final String SORT_STATE = "state";
+
+    private final List<T> items;
+    private final String[] names;
+    private final String[] searchTexts;
+    private final int[] sizes;
+    private final long[] times;
+    private final String[] states;
+    private final Map<String, Integer> rowsById;
+    private final Map<String, int[]> sortOrders = new ConcurrentHashMap<>();
+
+    private ResourceIndex(List<T> items,
+                          Function<T, String> idOf,
+                          Function<T, List<Tag>> tagsOf,
+                          Function<T, Integer> sizeOf,
+                          Function<T, Instant> timeOf,
+                          Function<T, String> stateOf) {
+        int size = items.size();
+        this.items = items;
+        this.names = new String[size];
+        this.searchTexts = new String[size];
+        this.sizes = new int[size];
+        this.times = new long[size];
+        this.states = new String[size];
+        this.rowsById = new HashMap<>(size * 2);
+
+        for (int row = 0; row < size; row++) {
+            T item = items.get(row);
+            String id = idOf.apply(item);
+            Integer itemSize = sizeOf.apply(item);
+            Instant time = timeOf.apply(item);
+            names[row] = ResourceNames.nameOrId(tagsOf.apply(item), id);
+            searchTexts[row] = (names[row] + " " + id).toLowerCase(Locale.ROOT);
+            sizes[row] = itemSize != null ? itemSize : 0;
+            times[row] = time != null ? time.toEpochMilli() : 0L;
+            states[row] = stateOf.apply(item);
+            rowsById.put(id, row);
+        }
+    }
+
+    public static ResourceIndex<Snapshot> ofSnapshots(List<Snapshot> snapshots) {
+        return new ResourceIndex<>(snapshots, Snapshot::snapshotId, Snapshot::tags, Snapshot::volumeSize,
+                Snapshot::startTime, Snapshot::stateAsString);
+    }
+
+    public static ResourceIndex<Volume> ofVolumes(List<Volume> volumes) {
+        return new ResourceIndex<>(volumes, Volume::volumeId, Volume::tags, Volume::size,
+                Volume::createTime, Volume::stateAsString);
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public String nameOf(String id) {
+        Integer row = rowsById.get(id);
+        return row != null ? names[row] : id;
+    }
+
+    public int count(String filter) {
+        String needle = normalize(filter);
+        if (needle == null) {
+            return size();
+        }
+        return (int) IntStream.range(0, size()).filter(row -> searchTexts[row].contains(needle)).count();
+    }
+
+    /**
+     * Returns one page of items matching the filter, in the requested order.
+     *
+     * @param sortProperty one of the {@code SORT_*} constants, or {@code null} for the order AWS returned
+     */
+    public Stream<T> query(String filter, String sortProperty, boolean ascending, int offset, int limit) {
+        String needle = normalize(filter);
+        IntStream rows = sortProperty == null
+                ? IntStream.range(0, size())
+                : Arrays.stream(sortOrder(sortProperty, ascending));
+        if (needle != null) {
+            rows = rows.filter(row -> searchTexts[row].contains(needle));
+        }
+        return rows.skip(offset).limit(limit).mapToObj(items::get);
+    }
+
+    private int[] sortOrder(String sortProperty, boolean ascending) {
+        return sortOrders.computeIfAbsent(sortProperty + (ascending ? ":asc" : ":desc"), key -> {
+            Comparator<Integer> comparator = comparator(sortProperty);
+            if (!ascending) {
+                comparator = comparator.reversed();
+            }
+            return IntStream.range(0, size()).boxed().sorted(comparator).mapToInt(Integer::intValue).toArray();
+        });
+    }
+
+    private Comparator<Integer> comparator(String sortProperty) {
+        return switch (sortProperty) {
+            case SORT_NAME -> Comparator.comparing(row -> names[row], String.CASE_INSENSITIVE_ORDER);
+            case SORT_SIZE -> Comparator.comparingInt(row -> sizes[row]);
+            case SORT_TIME -> Comparator.comparingLong(row -> times[row]);
+            case SORT_STATE -> Comparator.comparing(row -> states[row] != null ? states[row] : "");
+            default -> throw new IllegalArgumentException("Unknown sort property: " + sortProperty);
+        };
+    }
+
+    private static String normalize(String filter) {
+        if (filter == null || filter.isBlank()) {
+            return null;
+        }
+        return filter.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,23 @@
+package de.kartax.awslauncher.aws;
+
+import software.amazon.awssdk.services.ec2.model.Tag;
+
+import java.util.List;
+
+public final class ResourceNames {
+
+    private ResourceNames() {
+    }
+
+    /**
+     * Returns the value of the {@code Name} tag, or the resource id if there is none.
+     */
+    public static String nameOrId(List<Tag> tags, String id) {
+        for (Tag tag : tags) {
+            if ("Name".equals(tag.key())) {
+                return tag.value();
+            }
+        }
+        return id;
+    }
+}
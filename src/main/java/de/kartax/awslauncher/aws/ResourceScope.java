@@ -0,0 +1,90 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.Tag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The part of the account shown on the dashboard: resources with one of the configured tag values, optionally
+ * limited to some states. Sent to EC2 as request filters, and checked locally for resources reported by events.
+ * An empty tag value list means the whole account.
+ */
+@Component
+public class ResourceScope {
+
+    private final String tagKey;
+    private final List<String> tagValues;
+    private final List<Pattern> tagPatterns;
+    private final List<String> instanceStates;
+    private final List<String> volumeStates;
+    private final List<String> snapshotStates;
+    private final int pageSize;
+
+    public ResourceScope(AwsConfig awsConfig) {
+        this.tagKey = awsConfig.getScopeTagKey();
+        this.tagValues = awsConfig.getScopeTagValues();
+        this.tagPatterns = tagValues.stream().map(ResourceScope::wildcardPattern).toList();
+        this.instanceStates = awsConfig.getScopeInstanceStates();
+        this.volumeStates = awsConfig.getScopeVolumeStates();
+        this.snapshotStates = awsConfig.getScopeSnapshotStates();
+        this.pageSize = awsConfig.getDescribePageSize();
+    }
+
+    public List<Filter> instanceFilters() {
+        return filters("instance-state-name", instanceStates);
+    }
+
+    public List<Filter> volumeFilters() {
+        return filters("status", volumeStates);
+    }
+
+    public List<Filter> snapshotFilters() {
+        return filters("status", snapshotStates);
+    }
+
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Whether a resource with these tags belongs to the scope, using the same wildcards as EC2 filters.
+     */
+    public boolean matches(List<Tag> tags) {
+        if (tagPatterns.isEmpty()) {
+            return true;
+        }
+        for (Tag tag : tags) {
+            if (tagKey.equals(tag.key()) && tagPatterns.stream().anyMatch(pattern -> pattern.matcher(tag.value()).matches())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Filter> filters(String stateFilterName, List<String> states) {
+        List<Filter> filters = new ArrayList<>(2);
+        if (!tagValues.isEmpty()) {
+            filters.add(Filter.builder().name("tag:" + tagKey).values(tagValues).build());
+        }
+        if (!states.isEmpty()) {
+            filters.add(Filter.builder().name(stateFilterName).values(states).build());
+        }
+        return filters;
+    }
+
+    private static Pattern wildcardPattern(String value) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : value.split("\\*", -1)) {
+            if (!regex.isEmpty()) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,467 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.CreateSnapshotRequest;
+import software.amazon.awssdk.services.ec2.model.DeleteSnapshotRequest;
+import software.amazon.awssdk.services.ec2.model.DeleteVolumeRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSnapshotsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesRequest;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.ResourceType;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.Volume;
+import software.amazon.awssdk.services.ec2.model.VolumeState;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Backs up the GamingRig volume once its instance is gone, in place of the wait loop of
+ * aws-step-function-backup-and-delete.json. Enabled with {@code aws.snapshotLifecycle}; remove the
+ * state machine from the EventBridge rule then, or every volume is backed up twice.
+ * <p>
+ * A volume that shows up detached in a refresh gets a snapshot, whose progress is polled at an interval
+ * derived from its progress so far and patched into the snapshot grid as it goes. Once it has completed,
+ * the {@link SnapshotRetention} policy picks the old snapshots to delete and the volume is deleted.
+ * Deletes run in waves of parallel calls; the wave size grows by one after a clean wave and halves
+ * when EC2 throttles, and throttled deletes are retried in the next wave.
+ * <p>
+ * Only volumes named GamingRig in the home region are handled, like {@link FastLaunch}, whatever the
+ * dashboard's scope. The snapshot is tagged with its source volume, so a volume whose delete failed is
+ * only deleted on the next refresh, not backed up again.
+ */
+@Slf4j
+@Service
+public class SnapshotLifecycle {
+
+    private static final int MAX_THROTTLED_ATTEMPTS = 5;
+    private static final String VOLUME_NAME = "GamingRig";
+    // marks a snapshot as the backup of a detached volume, so a failed volume delete is retried alone
+    private static final String SOURCE_VOLUME_TAG = "SourceVolume";
+
+    private final Ec2Client ec2Client;
+    private final AwsStateCache stateCache;
+    private final DashboardEventService eventService;
+    private final TaskScheduler taskScheduler;
+    private final FastLaunch fastLaunch;
+    private final Ec2ClientRegistry clientRegistry;
+    private final AwsConfig awsConfig;
+    private final MeterRegistry meterRegistry;
+    private final SnapshotRetention retention;
+    private final Map<String, Backup> backups = new ConcurrentHashMap<>();
+    private final ExecutorService cleanupExecutor;
+    private final ExecutorService deleteExecutor;
+
+    private int deleteConcurrency;
+
+    public SnapshotLifecycle(@Lazy Ec2Client ec2Client, AwsStateCache stateCache, DashboardEventService eventService, TaskScheduler taskScheduler, FastLaunch fastLaunch, Ec2ClientRegistry clientRegistry, AwsConfig awsConfig, MeterRegistry meterRegistry) {
+        this.ec2Client = ec2Client;
+        this.stateCache = stateCache;
+        this.eventService = eventService;
+        this.taskScheduler = taskScheduler;
+        this.fastLaunch = fastLaunch;
+        this.clientRegistry = clientRegistry;
+        this.awsConfig = awsConfig;
+        this.meterRegistry = meterRegistry;
+        this.retention = new SnapshotRetention(awsConfig.getSnapshotKeepLast(), awsConfig.getSnapshotKeepDailyDays());
+        this.deleteConcurrency = Math.max(1, awsConfig.getSnapshotDeleteConcurrency());
+        this.cleanupExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deleteExecutor = Executors.newFixedThreadPool(deleteConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-delete");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        cleanupExecutor.shutdownNow();
+        deleteExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts a backup for every detached GamingRig volume, resumes tracking its pending snapshot after a
+     * restart, or only retries the cleanup if a completed backup of it exists. Called after every volume
+     * refresh; looks the volumes up itself, so the dashboard scope does not decide what gets deleted.
+     */
+    public void reconcile() {
+        if (!awsConfig.isSnapshotLifecycle()) {
+            return;
+        }
+        List<Volume> volumes;
+        List<Snapshot> snapshots;
+        try {
+            volumes = ec2Client.describeVolumes(DescribeVolumesRequest.builder()
+                            .filters(Filter.builder().name("tag:Name").values(VOLUME_NAME).build(),
+                                    Filter.builder().name("status").values(VolumeState.AVAILABLE.toString()).build())
+                            .build())
+                    .volumes().stream()
+                    .filter(volume -> !backups.containsKey(volume.volumeId()))
+                    .toList();
+            if (volumes.isEmpty()) {
+                return;
+            }
+            snapshots = ec2Client.describeSnapshots(DescribeSnapshotsRequest.builder()
+                            .ownerIds("self")
+                            .filters(Filter.builder().name("volume-id").values(volumes.stream().map(Volume::volumeId).toList()).build())
+                            .build())
+                    .snapshots();
+        } catch (SdkException e) {
+            log.debug("Error looking up detached volumes", e);
+            return;
+        }
+        for (Volume volume : volumes) {
+            List<Snapshot> ofVolume = snapshots.stream().filter(snapshot -> volume.volumeId().equals(snapshot.volumeId())).toList();
+            Snapshot pending = ofVolume.stream()
+                    .filter(snapshot -> snapshot.state() == SnapshotState.PENDING)
+                    .findFirst().orElse(null);
+            Snapshot backedUp = ofVolume.stream()
+                    .filter(snapshot -> snapshot.state() == SnapshotState.COMPLETED && isBackupOf(snapshot, volume))
+                    .findFirst().orElse(null);
+            if (pending == null && backedUp != null) {
+                retryCleanUp(volume, backedUp);
+            } else {
+                backup(volume, pending);
+            }
+        }
+    }
+
+    /**
+     * Whether the snapshot's progress is already polled here, so the regular refresh does not have to.
+     */
+    public boolean isTracking(String snapshotId) {
+        return backups.values().stream().anyMatch(backup -> snapshotId.equals(backup.snapshotId));
+    }
+
+    CompletableFuture<Void> backup(Volume volume, Snapshot pending) {
+        String name = ResourceNames.nameOrId(volume.tags(), volume.volumeId());
+        var backup = new Backup(volume.volumeId(), name, Duration.ofSeconds(awsConfig.getSnapshotPollMinSeconds()));
+        if (backups.putIfAbsent(volume.volumeId(), backup) != null) {
+            return backups.get(volume.volumeId()).result;
+        }
+        if (pending != null) {
+            log.debug("Resuming backup of {} with {}", volume.volumeId(), pending.snapshotId());
+            backup.snapshotId = pending.snapshotId();
+            backup.startedAt = pending.startTime();
+        } else {
+            try {
+                var snapshot = ec2Client.createSnapshot(CreateSnapshotRequest.builder()
+                        .volumeId(volume.volumeId())
+                        .tagSpecifications(spec -> spec.resourceType(ResourceType.SNAPSHOT)
+                                .tags(tag("Name", name), tag(SOURCE_VOLUME_TAG, volume.volumeId())))
+                        .build());
+                backup.snapshotId = snapshot.snapshotId();
+                backup.startedAt = snapshot.startTime() != null ? snapshot.startTime() : Instant.now();
+                eventService.broadcastMessageOnlyEvent(this, "Backing up " + name + " to " + snapshot.snapshotId());
+            } catch (SdkException e) {
+                log.debug("Error creating snapshot of {}", volume.volumeId(), e);
+                eventService.broadcastMessageOnlyEvent(this, "Backup of " + name + " failed: " + e.getMessage());
+                backups.remove(volume.volumeId());
+                backup.result.completeExceptionally(e);
+                return backup.result;
+            }
+        }
+        schedule(backup);
+        return backup.result;
+    }
+
+    /**
+     * The volume was backed up but not deleted, most likely because the delete failed: delete it
+     * without taking another snapshot.
+     */
+    private void retryCleanUp(Volume volume, Snapshot snapshot) {
+        String name = ResourceNames.nameOrId(volume.tags(), volume.volumeId());
+        var backup = new Backup(volume.volumeId(), name, Duration.ofSeconds(awsConfig.getSnapshotPollMinSeconds()));
+        if (backups.putIfAbsent(volume.volumeId(), backup) != null) {
+            return;
+        }
+        log.debug("Volume {} already backed up to {}, retrying cleanup", volume.volumeId(), snapshot.snapshotId());
+        backup.snapshotId = snapshot.snapshotId();
+        backup.startedAt = snapshot.startTime();
+        cleanupExecutor.execute(() -> cleanUp(backup));
+    }
+
+    private void schedule(Backup backup) {
+        taskScheduler.schedule(() -> {
+            if (!poll(backup)) {
+                schedule(backup);
+            }
+        }, Instant.now().plus(backup.delay));
+    }
+
+    /**
+     * Reads the snapshot's progress, shows it in the grid and works out when to look again.
+     *
+     * @return true once the snapshot has completed or failed
+     */
+    boolean poll(Backup backup) {
+        Snapshot snapshot;
+        try {
+            snapshot = ec2Client.describeSnapshots(DescribeSnapshotsRequest.builder().snapshotIds(backup.snapshotId).build())
+                    .snapshots().stream().findFirst().orElse(null);
+        } catch (SdkException e) {
+            log.debug("Error reading progress of {}", backup.snapshotId, e);
+            backup.delay = maxDelay(backup.delay.multipliedBy(2));
+            return false;
+        }
+        if (snapshot == null) {
+            return fail(backup, "Snapshot " + backup.snapshotId + " of " + backup.name + " disappeared");
+        }
+        eventService.broadcastEvent(stateCache.patch(current -> {
+            var event = new DashboardUpdateEvent(this);
+            event.setSnapshots(upsert(current.snapshots(), LeanResources.snapshot(snapshot, homeLabel())));
+            return event;
+        }));
+        return switch (snapshot.state()) {
+            case COMPLETED -> {
+                Duration took = Duration.between(backup.startedAt, Instant.now());
+                meterRegistry.timer("aws.snapshot.backup").record(took);
+                eventService.broadcastMessageOnlyEvent(this, "Backup of " + backup.name + " completed in " + format(took));
+                cleanupExecutor.execute(() -> cleanUp(backup));
+                yield true;
+            }
+            case PENDING -> {
+                backup.delay = nextDelay(backup, snapshot.progress());
+                yield false;
+            }
+            default -> fail(backup, "Backup of " + backup.name + " failed: snapshot " + snapshot.stateAsString());
+        };
+    }
+
+    /**
+     * Expected time left, going by the progress so far, halved so the end is not overshot by much.
+     */
+    private Duration nextDelay(Backup backup, String progress) {
+        int percent = parsePercent(progress);
+        if (percent <= 0 || percent >= 100) {
+            return maxDelay(backup.delay.multipliedBy(2));
+        }
+        Duration elapsed = Duration.between(backup.startedAt, Instant.now());
+        Duration remaining = elapsed.multipliedBy(100 - percent).dividedBy(percent);
+        Duration min = Duration.ofSeconds(awsConfig.getSnapshotPollMinSeconds());
+        Duration half = remaining.dividedBy(2);
+        return maxDelay(half.compareTo(min) < 0 ? min : half);
+    }
+
+    private Duration maxDelay(Duration delay) {
+        Duration max = Duration.ofSeconds(awsConfig.getSnapshotPollMaxSeconds());
+        return delay.compareTo(max) > 0 ? max : delay;
+    }
+
+    private boolean fail(Backup backup, String message) {
+        eventService.broadcastMessageOnlyEvent(this, message);
+        backups.remove(backup.volumeId);
+        backup.result.completeExceptionally(new IllegalStateException(message));
+        return true;
+    }
+
+    /**
+     * Applies the retention policy to the volume's snapshots, then deletes the volume.
+     */
+    void cleanUp(Backup backup) {
+        try {
+            List<Snapshot> snapshots = ec2Client.describeSnapshots(DescribeSnapshotsRequest.builder()
+                            .ownerIds("self")
+                            .filters(Filter.builder().name("tag:Name").values(backup.name).build())
+                            .build())
+                    .snapshots();
+            // the launch AMI of an old snapshot has to go before the snapshot can
+            fastLaunch.reconcile(snapshots);
+            List<String> expired = retention.expired(snapshots, Instant.now()).stream()
+                    .map(Snapshot::snapshotId)
+                    .filter(id -> !id.equals(backup.snapshotId))
+                    .toList();
+            int deleted = deleteSnapshots(expired);
+
+            ec2Client.deleteVolume(DeleteVolumeRequest.builder().volumeId(backup.volumeId).build());
+            DashboardUpdateEvent changes = stateCache.patch(current -> {
+                var event = new DashboardUpdateEvent(this);
+                if (current.volumes() != null) {
+                    event.setVolumes(current.volumes().stream().filter(volume -> !backup.volumeId.equals(volume.volumeId())).toList());
+                }
+                return event;
+            });
+            changes.setMessage("Deleted volume " + backup.name + " and " + deleted + " of " + expired.size() + " old snapshots");
+            eventService.broadcastEvent(changes);
+            backups.remove(backup.volumeId);
+            backup.result.complete(null);
+        } catch (SdkException e) {
+            log.debug("Error cleaning up after backup of {}", backup.volumeId, e);
+            eventService.broadcastMessageOnlyEvent(this, "Cleanup after backup of " + backup.name + " failed: " + e.getMessage());
+            backups.remove(backup.volumeId);
+            backup.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Deletes the snapshots in waves, adapting the wave size to throttling, and removes them from the grid
+     * after each wave.
+     *
+     * @return the number of snapshots deleted
+     */
+    int deleteSnapshots(List<String> snapshotIds) {
+        Deque<String> remaining = new ArrayDeque<>(snapshotIds);
+        Map<String, Integer> throttled = new HashMap<>();
+        int deleted = 0;
+        while (!remaining.isEmpty()) {
+            List<String> wave = new ArrayList<>();
+            for (int i = currentConcurrency(); i > 0 && !remaining.isEmpty(); i--) {
+                wave.add(remaining.poll());
+            }
+            Map<String, CompletableFuture<DeleteOutcome>> calls = wave.stream().collect(Collectors.toMap(id -> id,
+                    id -> CompletableFuture.supplyAsync(() -> delete(id), deleteExecutor)));
+
+            Set<String> gone = new HashSet<>();
+            boolean wasThrottled = false;
+            for (var call : calls.entrySet()) {
+                switch (call.getValue().join()) {
+                    case DELETED -> gone.add(call.getKey());
+                    case THROTTLED -> {
+                        wasThrottled = true;
+                        if (throttled.merge(call.getKey(), 1, Integer::sum) < MAX_THROTTLED_ATTEMPTS) {
+                            remaining.add(call.getKey());
+                        }
+                    }
+                    case FAILED -> {
+                    }
+                }
+            }
+            deleted += gone.size();
+            adjustConcurrency(wasThrottled);
+            meterRegistry.summary("aws.snapshot.delete.wave").record(wave.size());
+            if (!gone.isEmpty()) {
+                eventService.broadcastEvent(stateCache.patch(current -> {
+                    var event = new DashboardUpdateEvent(this);
+                    if (current.snapshots() != null) {
+                        event.setSnapshots(current.snapshots().stream().filter(snapshot -> !gone.contains(snapshot.snapshotId())).toList());
+                    }
+                    return event;
+                }));
+            }
+            if (wasThrottled && !remaining.isEmpty()) {
+                // give the request rate a moment to recover before the retries
+                try {
+                    Thread.sleep(Duration.ofSeconds(awsConfig.getSnapshotPollMinSeconds()).toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private DeleteOutcome delete(String snapshotId) {
+        try {
+            ec2Client.deleteSnapshot(DeleteSnapshotRequest.builder().snapshotId(snapshotId).build());
+            return DeleteOutcome.DELETED;
+        } catch (AwsServiceException e) {
+            if (e.isThrottlingException()) {
+                return DeleteOutcome.THROTTLED;
+            }
+            log.debug("Error deleting {}", snapshotId, e);
+            return DeleteOutcome.FAILED;
+        } catch (SdkException e) {
+            log.debug("Error deleting {}", snapshotId, e);
+            return DeleteOutcome.FAILED;
+        }
+    }
+
+    synchronized int currentConcurrency() {
+        return deleteConcurrency;
+    }
+
+    private synchronized void adjustConcurrency(boolean throttled) {
+        int max = Math.max(1, awsConfig.getSnapshotDeleteConcurrency());
+        deleteConcurrency = throttled ? Math.max(1, deleteConcurrency / 2) : Math.min(max, deleteConcurrency + 1);
+    }
+
+    private static boolean isBackupOf(Snapshot snapshot, Volume volume) {
+        return snapshot.tags() != null && snapshot.tags().stream()
+                .anyMatch(tag -> SOURCE_VOLUME_TAG.equals(tag.key()) && volume.volumeId().equals(tag.value()));
+    }
+
+    private String homeLabel() {
+        return clientRegistry.homeLabel();
+    }
+
+    private static List<Snapshot> upsert(List<Snapshot> snapshots, Snapshot snapshot) {
+        List<Snapshot> result = new ArrayList<>();
+        if (snapshots != null) {
+            snapshots.stream().filter(existing -> !existing.snapshotId().equals(snapshot.snapshotId())).forEach(result::add);
+        }
+        result.add(snapshot);
+        return result;
+    }
+
+    private static int parsePercent(String progress) {
+        if (progress == null || progress.isBlank()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(progress.replace("%", "").trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String format(Duration duration) {
+        return duration.toMinutes() > 0
+                ? duration.toMinutes() + "m " + duration.toSecondsPart() + "s"
+                : duration.toSeconds() + "s";
+    }
+
+    private static Tag tag(String key, String value) {
+        return Tag.builder().key(key).value(value).build();
+    }
+
+    private enum DeleteOutcome {
+        DELETED, THROTTLED, FAILED
+    }
+
+    static class Backup {
+
+        private final String volumeId;
+        private final String name;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private String snapshotId;
+        private Instant startedAt;
+        private Duration delay;
+
+        Backup(String volumeId, String name, Duration delay) {
+            this.volumeId = volumeId;
+            this.name = name;
+            this.delay = delay;
+        }
+    }
+}
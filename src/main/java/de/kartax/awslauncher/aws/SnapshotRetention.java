@@ -0,0 +1,40 @@
+package de.kartax.awslauncher.aws;
+
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which backups of a volume can go: the newest {@code keepLast} completed snapshots stay,
+ * and so does the newest completed snapshot of each of the last {@code keepDailyDays} days (UTC).
+ * Snapshots that have not completed are never expired, and at least one completed snapshot always stays.
+ */
+record SnapshotRetention(int keepLast, int keepDailyDays) {
+
+    List<Snapshot> expired(List<Snapshot> snapshots, Instant now) {
+        List<Snapshot> completed = snapshots.stream()
+                .filter(snapshot -> snapshot.state() == SnapshotState.COMPLETED)
+                .sorted(Comparator.comparing(Snapshot::startTime).reversed())
+                .toList();
+        LocalDate today = LocalDate.ofInstant(now, ZoneOffset.UTC);
+        Set<LocalDate> keptDays = new HashSet<>();
+        List<Snapshot> expired = new ArrayList<>();
+        for (int i = 0; i < completed.size(); i++) {
+            Snapshot snapshot = completed.get(i);
+            LocalDate day = LocalDate.ofInstant(snapshot.startTime(), ZoneOffset.UTC);
+            boolean daily = day.isAfter(today.minusDays(keepDailyDays)) && keptDays.add(day);
+            if (i >= Math.max(1, keepLast) && !daily) {
+                expired.add(snapshot);
+            }
+        }
+        return expired;
+    }
+}
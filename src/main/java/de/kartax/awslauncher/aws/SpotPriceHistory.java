@@ -0,0 +1,259 @@
+package de.kartax.awslauncher.aws;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.ec2.model.SpotPrice;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * Local time series of spot prices per instance type and availability zone, persisted to disk,
+ * so each refresh only has to fetch the price changes since the type was last fetched. The fetch time
+ * is kept apart from the prices, as a type without prices for the product would otherwise be fetched
+ * for the whole retention window every time.
+ * <p>
+ * Only prices of one product description are kept, as Linux and Windows prices of the same zone
+ * would otherwise interleave in one series.
+ */
+@Slf4j
+@Component
+public class SpotPriceHistory {
+
+    private static final int FILE_VERSION = 3;
+
+    private final Path file;
+    private final Duration retention;
+    private final String productDescription;
+    private final Map<String, Map<String, Series>> seriesByType = new HashMap<>();
+    private final Map<String, Long> fetchedUntil = new HashMap<>();
+
+    public SpotPriceHistory(@Value("${aws.spotHistoryFile}") String file,
+                            @Value("${aws.spotHistoryDays}") long retentionDays,
+                            @Value("${aws.spotProductDescription}") String productDescription) {
+        if (productDescription == null || productDescription.isBlank()) {
+            throw new IllegalArgumentException("aws.spotProductDescription must name one product, e.g. Windows");
+        }
+        this.file = Paths.get(file);
+        this.retention = Duration.ofDays(retentionDays);
+        this.productDescription = productDescription;
+        load();
+    }
+
+    public String getProductDescription() {
+        return productDescription;
+    }
+
+    /**
+     * Where the next fetch for the given types has to start: the oldest time they were fetched up to,
+     * or the start of the retention window if a type was never fetched.
+     */
+    public synchronized Instant fetchStart(Collection<String> instanceTypes, Instant now) {
+        Instant windowStart = now.minus(retention);
+        Instant start = now;
+        for (String instanceType : instanceTypes) {
+            Long fetched = fetchedUntil.get(instanceType);
+            if (fetched == null) {
+                return windowStart;
+            }
+            Instant fetchedTime = Instant.ofEpochSecond(fetched);
+            if (fetchedTime.isBefore(start)) {
+                start = fetchedTime;
+            }
+        }
+        return start.isBefore(windowStart) ? windowStart : start;
+    }
+
+    /**
+     * Remembers that the prices of the types are known up to the given time, whether or not the fetch
+     * returned any.
+     */
+    public synchronized void markFetched(Collection<String> instanceTypes, Instant until) {
+        instanceTypes.forEach(instanceType -> fetchedUntil.merge(instanceType, until.getEpochSecond(), Math::max));
+    }
+
+    public synchronized void record(List<SpotPrice> spotPrices) {
+        long cutoff = Instant.now().minus(retention).getEpochSecond();
+        spotPrices.stream()
+                .filter(spotPrice -> productDescription.equals(spotPrice.productDescriptionAsString()))
+                .sorted(Comparator.comparing(SpotPrice::timestamp))
+                .forEach(spotPrice -> seriesByType
+                        .computeIfAbsent(spotPrice.instanceTypeAsString(), type -> new HashMap<>())
+                        .computeIfAbsent(spotPrice.availabilityZone(), zone -> new Series())
+                        .add(spotPrice.timestamp().getEpochSecond(), Float.parseFloat(spotPrice.spotPrice())));
+        seriesByType.values().forEach(zones -> zones.values().forEach(series -> series.dropBefore(cutoff)));
+    }
+
+    /**
+     * The current price in the cheapest availability zone.
+     */
+    public synchronized OptionalDouble current(String instanceType) {
+        return cheapestAz(instanceType).map(zone -> OptionalDouble.of(seriesByType.get(instanceType).get(zone).last()))
+                .orElse(OptionalDouble.empty());
+    }
+
+    public synchronized Optional<String> cheapestAz(String instanceType) {
+        Map<String, Series> zones = seriesByType.getOrDefault(instanceType, Map.of());
+        return zones.entrySet().stream()
+                .filter(entry -> entry.getValue().size > 0)
+                .min(Comparator.comparingDouble(entry -> entry.getValue().last()))
+                .map(Map.Entry::getKey);
+    }
+
+    /**
+     * Percentile of the prices in effect during the window, in the given availability zone.
+     *
+     * @param percentile between 0 and 100, e.g. 50 or 95
+     */
+    public synchronized OptionalDouble percentile(String instanceType, String availabilityZone, Duration window, double percentile) {
+        Series series = seriesByType.getOrDefault(instanceType, Map.of()).get(availabilityZone);
+        if (series == null || series.size == 0) {
+            return OptionalDouble.empty();
+        }
+        float[] prices = series.pricesSince(Instant.now().minus(window).getEpochSecond());
+        Arrays.sort(prices);
+        int rank = (int) Math.ceil(percentile / 100.0 * prices.length);
+        return OptionalDouble.of(prices[Math.max(0, Math.min(prices.length - 1, rank - 1))]);
+    }
+
+    public synchronized void save() {
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_VERSION);
+                out.writeUTF(productDescription);
+                out.writeInt(seriesByType.values().stream().mapToInt(Map::size).sum());
+                for (var type : seriesByType.entrySet()) {
+                    for (var zone : type.getValue().entrySet()) {
+                        Series series = zone.getValue();
+                        out.writeUTF(type.getKey());
+                        out.writeUTF(zone.getKey());
+                        out.writeInt(series.size);
+                        for (int i = 0; i < series.size; i++) {
+                            out.writeLong(series.times[i]);
+                            out.writeFloat(series.prices[i]);
+                        }
+                    }
+                }
+                out.writeInt(fetchedUntil.size());
+                for (var fetched : fetchedUntil.entrySet()) {
+                    out.writeUTF(fetched.getKey());
+                    out.writeLong(fetched.getValue());
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error saving spot price history", e);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) {
+                log.info("Ignoring spot price history with unknown version");
+                return;
+            }
+            if (!productDescription.equals(in.readUTF())) {
+                log.info("Ignoring spot price history of another product");
+                return;
+            }
+            int seriesCount = in.readInt();
+            for (int s = 0; s < seriesCount; s++) {
+                String instanceType = in.readUTF();
+                String availabilityZone = in.readUTF();
+                int size = in.readInt();
+                Series series = new Series();
+                for (int i = 0; i < size; i++) {
+                    series.add(in.readLong(), in.readFloat());
+                }
+                seriesByType.computeIfAbsent(instanceType, type -> new HashMap<>()).put(availabilityZone, series);
+            }
+            int fetchedCount = in.readInt();
+            for (int f = 0; f < fetchedCount; f++) {
+                fetchedUntil.put(in.readUTF(), in.readLong());
+            }
+        } catch (IOException e) {
+            log.error("Error loading spot price history", e);
+            seriesByType.clear();
+            fetchedUntil.clear();
+        }
+    }
+
+    /**
+     * Price changes of one instance type in one availability zone, oldest first.
+     */
+    private static final class Series {
+
+        private long[] times = new long[16];
+        private float[] prices = new float[16];
+        private int size;
+
+        void add(long time, float price) {
+            if (size > 0 && time <= times[size - 1]) {
+                return;
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            times[size] = time;
+            prices[size] = price;
+            size++;
+        }
+
+        long lastTime() {
+            return size > 0 ? times[size - 1] : 0;
+        }
+
+        float last() {
+            return prices[size - 1];
+        }
+
+        /**
+         * Prices changed after the given time, plus the one already in effect at that time.
+         */
+        float[] pricesSince(long time) {
+            int first = size - 1;
+            while (first > 0 && times[first] > time) {
+                first--;
+            }
+            return Arrays.copyOfRange(prices, first, size);
+        }
+
+        /**
+         * Drops prices older than the given time, keeping the one still in effect at that time.
+         */
+        void dropBefore(long time) {
+            int first = 0;
+            while (first < size - 1 && times[first + 1] <= time) {
+                first++;
+            }
+            if (first > 0) {
+                System.arraycopy(times, first, times, 0, size - first);
+                System.arraycopy(prices, first, prices, 0, size - first);
+                size -= first;
+            }
+        }
+    }
+}
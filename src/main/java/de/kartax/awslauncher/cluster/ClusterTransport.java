@@ -0,0 +1,31 @@
+package de.kartax.awslauncher.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Connects the app nodes of a deployment: elects one leader and passes opaque messages between nodes.
+ */
+public interface ClusterTransport extends AutoCloseable {
+
+    String nodeId();
+
+    boolean isLeader();
+
+    /**
+     * Sends the message to all other nodes. Must not block for long, it is called while publishing updates.
+     */
+    void publish(byte[] message);
+
+    /**
+     * Receives the messages of all other nodes, in the order they were published by each node.
+     */
+    void subscribe(Consumer<byte[]> receiver);
+
+    /**
+     * Called whenever this node becomes the leader.
+     */
+    void onLeadership(Runnable callback);
+
+    @Override
+    void close();
+}
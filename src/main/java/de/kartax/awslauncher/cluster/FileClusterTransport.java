@@ -0,0 +1,202 @@
+package de.kartax.awslauncher.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Transport over a directory shared by all nodes, e.g. a volume mounted into every replica.
+ * <p>
+ * The node holding the lock on {@code leader.lock} is the leader; the others retry on every poll, so
+ * leadership moves on when the leader's process ends. Messages are files in {@code messages}, named
+ * {@code <millis>-<sequence>-<node>.msg} and moved into place atomically. Every node lists the directory
+ * each poll interval and reads the files it has not seen yet; the leader deletes files older than the retention
+ * and every node forgets the names it has seen before then.
+ * The directory needs working file locks, which rules out some network file systems.
+ */
+@Slf4j
+public class FileClusterTransport implements ClusterTransport {
+
+    private static final String SUFFIX = ".msg";
+
+    private final Path lockFile;
+    private final Path messages;
+    private final Duration retention;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Set<String> seen = new HashSet<>();
+    private final List<Consumer<byte[]>> receivers = new CopyOnWriteArrayList<>();
+    private final List<Runnable> leadershipCallbacks = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cluster-poll");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileChannel lockChannel;
+    private volatile FileLock leaderLock;
+
+    public FileClusterTransport(Path directory, Duration pollInterval, Duration retention) throws IOException {
+        this.lockFile = directory.resolve("leader.lock");
+        this.messages = directory.resolve("messages");
+        this.retention = retention;
+        Files.createDirectories(messages);
+        // only messages published from now on are of interest
+        try (Stream<Path> files = Files.list(messages)) {
+            files.map(file -> file.getFileName().toString()).filter(name -> name.endsWith(SUFFIX)).forEach(seen::add);
+        }
+        tryLead();
+        poller.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public boolean isLeader() {
+        return leaderLock != null && leaderLock.isValid();
+    }
+
+    @Override
+    public void publish(byte[] message) {
+        String name = String.format("%015d-%09d-%s%s", System.currentTimeMillis(), sequence.incrementAndGet(), nodeId, SUFFIX);
+        Path temp = messages.resolve("." + name + ".tmp");
+        try {
+            Files.write(temp, message);
+            Files.move(temp, messages.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error publishing cluster message", e);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> receiver) {
+        receivers.add(receiver);
+    }
+
+    @Override
+    public void onLeadership(Runnable callback) {
+        leadershipCallbacks.add(callback);
+    }
+
+    private void poll() {
+        try {
+            if (!isLeader() && tryLead()) {
+                log.info("Node {} is now the leader", nodeId);
+                leadershipCallbacks.forEach(Runnable::run);
+            }
+            long expiredBefore = System.currentTimeMillis() - retention.toMillis();
+            receive(expiredBefore);
+            if (isLeader()) {
+                deleteExpired(expiredBefore);
+            }
+            seen.removeIf(name -> publishedAt(name) < expiredBefore);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Error polling cluster directory", e);
+        }
+    }
+
+    private synchronized boolean tryLead() throws IOException {
+        if (lockChannel == null) {
+            lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        try {
+            leaderLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // another node in this JVM holds it
+            leaderLock = null;
+        }
+        return leaderLock != null;
+    }
+
+    /**
+     * Reads the messages not seen yet. Expired ones are skipped, as their names may have been forgotten already.
+     */
+    private void receive(long expiredBefore) throws IOException {
+        List<Path> unseen;
+        try (Stream<Path> files = Files.list(messages)) {
+            unseen = files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .filter(file -> publishedAt(file.getFileName().toString()) >= expiredBefore)
+                    .filter(file -> !seen.contains(file.getFileName().toString()))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : unseen) {
+            String name = file.getFileName().toString();
+            seen.add(name);
+            if (name.endsWith(nodeId + SUFFIX)) {
+                continue;
+            }
+            byte[] message;
+            try {
+                message = Files.readAllBytes(file);
+            } catch (IOException e) {
+                // deleted by the leader in the meantime
+                continue;
+            }
+            receivers.forEach(receiver -> receiver.accept(message));
+        }
+    }
+
+    private void deleteExpired(long expiredBefore) throws IOException {
+        try (Stream<Path> files = Files.list(messages)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SUFFIX) && publishedAt(name) < expiredBefore) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * The millis a message file name starts with, or {@link Long#MIN_VALUE} for names not written by {@link #publish}.
+     */
+    private static long publishedAt(String name) {
+        int separator = name.indexOf('-');
+        if (separator <= 0) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return Long.parseLong(name.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        poller.shutdownNow();
+        try {
+            if (leaderLock != null) {
+                leaderLock.release();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            log.debug("Error releasing leader lock", e);
+        }
+    }
+}
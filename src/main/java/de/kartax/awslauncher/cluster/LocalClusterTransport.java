@@ -0,0 +1,84 @@
+package de.kartax.awslauncher.cluster;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Transport for nodes in the same JVM. A single node on its own hub is always the leader, which is the
+ * default for a deployment with one replica. Several nodes on a shared hub stand in for a cluster in tests:
+ * the first node that joined leads, and the next one takes over when it closes.
+ */
+public class LocalClusterTransport implements ClusterTransport {
+
+    private final Hub hub;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Consumer<byte[]>> receivers = new CopyOnWriteArrayList<>();
+    private final List<Runnable> leadershipCallbacks = new CopyOnWriteArrayList<>();
+
+    public LocalClusterTransport() {
+        this(new Hub());
+    }
+
+    public LocalClusterTransport(Hub hub) {
+        this.hub = hub;
+        hub.join(this);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public boolean isLeader() {
+        return hub.leader() == this;
+    }
+
+    @Override
+    public void publish(byte[] message) {
+        for (LocalClusterTransport node : hub.nodes) {
+            if (node != this) {
+                node.receivers.forEach(receiver -> receiver.accept(message.clone()));
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> receiver) {
+        receivers.add(receiver);
+    }
+
+    @Override
+    public void onLeadership(Runnable callback) {
+        leadershipCallbacks.add(callback);
+    }
+
+    @Override
+    public void close() {
+        hub.leave(this);
+    }
+
+    public static class Hub {
+
+        private final List<LocalClusterTransport> nodes = new CopyOnWriteArrayList<>();
+
+        private void join(LocalClusterTransport node) {
+            nodes.add(node);
+        }
+
+        private void leave(LocalClusterTransport node) {
+            boolean wasLeader = leader() == node;
+            nodes.remove(node);
+            LocalClusterTransport next = leader();
+            if (wasLeader && next != null) {
+                next.leadershipCallbacks.forEach(Runnable::run);
+            }
+        }
+
+        private LocalClusterTransport leader() {
+            return nodes.isEmpty() ? null : nodes.get(0);
+        }
+    }
+}
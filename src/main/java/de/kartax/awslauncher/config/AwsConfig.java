@@ -1,22 +1,37 @@
 package de.kartax.awslauncher.config;
 
 
+import de.kartax.awslauncher.aws.AwsCallMetrics;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.budgets.BudgetsClient;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.sfn.SfnClient;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
 @Configuration
 @Getter
 public class AwsConfig {
 
+    private static final int ACCOUNT_SECTIONS = 2;
+    private static final int TARGET_SECTIONS = 3;
+
     @Value("${aws.accessKeyId}")
     private String awsAccessKeyId;
 
@@ -26,35 +41,238 @@ public class AwsConfig {
     @Value("${aws.region}")
     private String awsRegion;
 
+    @Value("${aws.targets}")
+    private List<String> targets;
+
+    @Value("${aws.targetConcurrency}")
+    private int targetConcurrency;
+
     @Value("${aws.budgetAccountId}")
     private String budgetAccountId;
 
     @Value("${aws.budgetName}")
     private String budgetName;
 
+    @Value("${aws.budgetCacheHours}")
+    private long budgetCacheHours;
+
+    @Value("${aws.costHistoryFile}")
+    private String costHistoryFile;
+
+    @Value("${aws.costRunRateDays}")
+    private long costRunRateDays;
+
+    @Value("${aws.refreshTimeoutSeconds}")
+    private long refreshTimeoutSeconds;
+
+    @Value("${aws.refreshStaleAfterSeconds}")
+    private long refreshStaleAfterSeconds;
+
+    @Value("${aws.pollFastSeconds}")
+    private long pollFastSeconds;
+
+    @Value("${aws.pollIdleSeconds}")
+    private long pollIdleSeconds;
+
+    @Value("${aws.pollMaxSeconds}")
+    private long pollMaxSeconds;
+
+    @Value("${aws.catalogInstanceTypes}")
+    private List<String> catalogInstanceTypes;
+
+    @Value("${aws.catalogMinGpus}")
+    private int catalogMinGpus;
+
+    @Value("${aws.catalogMinVcpus}")
+    private int catalogMinVcpus;
+
+    @Value("${aws.catalogMaxVcpus}")
+    private int catalogMaxVcpus;
+
+    @Value("${aws.catalogMinMemoryMiB}")
+    private long catalogMinMemoryMiB;
+
+    @Value("${aws.catalogFile}")
+    private String catalogFile;
+
+    @Value("${aws.catalogTtlHours}")
+    private long catalogTtlHours;
+
+    @Value("${aws.eventsToken}")
+    private String eventsToken;
+
+    @Value("${aws.scopeTagKey}")
+    private String scopeTagKey;
+
+    @Value("${aws.scopeTagValues}")
+    private List<String> scopeTagValues;
+
+    @Value("${aws.scopeInstanceStates}")
+    private List<String> scopeInstanceStates;
+
+    @Value("${aws.scopeVolumeStates}")
+    private List<String> scopeVolumeStates;
+
+    @Value("${aws.scopeSnapshotStates}")
+    private List<String> scopeSnapshotStates;
+
+    @Value("${aws.describePageSize}")
+    private int describePageSize;
+
+    @Value("${aws.stateFile}")
+    private String stateFile;
+
+    @Value("${aws.launchPollMinSeconds}")
+    private long launchPollMinSeconds;
+
+    @Value("${aws.launchPollMaxSeconds}")
+    private long launchPollMaxSeconds;
+
+    @Value("${aws.launchTimeoutMinutes}")
+    private long launchTimeoutMinutes;
+
+    @Value("${aws.fastLaunch}")
+    private boolean fastLaunch;
+
+    @Value("${aws.launchSecurityGroupId}")
+    private String launchSecurityGroupId;
+
+    @Value("${aws.launchKeyName}")
+    private String launchKeyName;
+
+    @Value("${aws.launchDedupeMinutes}")
+    private long launchDedupeMinutes;
+
+    @Value("${aws.snapshotLifecycle}")
+    private boolean snapshotLifecycle;
+
+    @Value("${aws.snapshotPollMinSeconds}")
+    private long snapshotPollMinSeconds;
+
+    @Value("${aws.snapshotPollMaxSeconds}")
+    private long snapshotPollMaxSeconds;
+
+    @Value("${aws.snapshotKeepLast}")
+    private int snapshotKeepLast;
+
+    @Value("${aws.snapshotKeepDailyDays}")
+    private int snapshotKeepDailyDays;
+
+    @Value("${aws.snapshotDeleteConcurrency}")
+    private int snapshotDeleteConcurrency;
+
+    @Value("${aws.httpConnectionTimeoutMillis}")
+    private long httpConnectionTimeoutMillis;
+
+    @Value("${aws.httpSocketTimeoutMillis}")
+    private long httpSocketTimeoutMillis;
+
+    @Value("${aws.apiCallTimeoutSeconds}")
+    private long apiCallTimeoutSeconds;
+
+    @Value("${aws.apiCallAttemptTimeoutSeconds}")
+    private long apiCallAttemptTimeoutSeconds;
+
+    @Value("${aws.maxAttempts}")
+    private int maxAttempts;
+
+    @Value("${aws.endpointOverride}")
+    private String endpointOverride;
+
+    @Bean
+    public AwsCredentialsProvider awsCredentialsProvider() {
+        return StaticCredentialsProvider.create(AwsBasicCredentials.create(awsAccessKeyId, awsSecretAccessKey));
+    }
+
+    /**
+     * Fast launch only runs together with the snapshot lifecycle. Its AMI keeps the latest snapshot in use,
+     * and only the lifecycle deregisters that AMI before deleting old snapshots; the backup state machine
+     * would fail to delete them and leave the volume behind.
+     */
+    public boolean isFastLaunch() {
+        return fastLaunch && snapshotLifecycle;
+    }
+
+    /**
+     * Threads of the refresh pool: every target may refresh its instances, volumes and snapshots at
+     * the same time, next to the account-wide cost and prices.
+     */
+    public int getRefreshThreads() {
+        return ACCOUNT_SECTIONS + TARGET_SECTIONS * Math.max(1, targets.size());
+    }
+
+    /*
+     * One pooled HTTP client for all AWS clients, so a refresh burst reuses the already open
+     * connections instead of each client doing its own TLS handshakes. The pool holds a connection
+     * for every refresh thread and snapshot delete, plus a few for launches and tracking.
+     * Like the clients it is created on the first AWS call, so Apache stays off the startup path.
+     */
+    @Bean
+    @Lazy
+    public SdkHttpClient awsHttpClient() {
+        int maxConnections = getRefreshThreads() + Math.max(1, snapshotDeleteConcurrency) + 4;
+        return ApacheHttpClient.builder()
+                .maxConnections(maxConnections)
+                .connectionTimeout(Duration.ofMillis(httpConnectionTimeoutMillis))
+                .socketTimeout(Duration.ofMillis(httpSocketTimeoutMillis))
+                .build();
+    }
+
+    /**
+     * Points the client at {@code aws.endpointOverride} if set, e.g. the fake AWS of the load test.
+     */
+    public <B extends AwsClientBuilder<B, ?>> B withEndpoint(B builder) {
+        if (!endpointOverride.isBlank()) {
+            builder.endpointOverride(URI.create(endpointOverride));
+        }
+        return builder;
+    }
+
+    public ClientOverrideConfiguration clientOverrides(AwsCallMetrics callMetrics) {
+        // adaptive retries back off with jitter and slow down the client when AWS starts throttling
+        return ClientOverrideConfiguration.builder()
+                .apiCallTimeout(Duration.ofSeconds(apiCallTimeoutSeconds))
+                .apiCallAttemptTimeout(Duration.ofSeconds(apiCallAttemptTimeoutSeconds))
+                .retryStrategy(AwsRetryStrategy.adaptiveRetryStrategy().toBuilder()
+                        .maxAttempts(maxAttempts)
+                        .build())
+                .addExecutionInterceptor(callMetrics)
+                .build();
+    }
+
+    /*
+     * The clients are created on first use instead of during startup, the SDK is among
+     * the slowest things to load. Consumers inject them with @Lazy.
+     */
     @Bean
-    public Ec2Client ec2Client() {
-        AwsBasicCredentials awsCreds = AwsBasicCredentials.create(awsAccessKeyId, awsSecretAccessKey);
-        return Ec2Client.builder()
-                .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
+    @Lazy
+    public Ec2Client ec2Client(SdkHttpClient awsHttpClient, AwsCredentialsProvider awsCredentialsProvider, AwsCallMetrics callMetrics) {
+        return withEndpoint(Ec2Client.builder())
+                .httpClient(awsHttpClient)
+                .credentialsProvider(awsCredentialsProvider)
+                .overrideConfiguration(clientOverrides(callMetrics))
                 .region(Region.of(awsRegion))
                 .build();
     }
 
     @Bean
-    public SfnClient sfnClient() {
-        AwsBasicCredentials awsCreds = AwsBasicCredentials.create(awsAccessKeyId, awsSecretAccessKey);
-        return SfnClient.builder()
-                .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
+    @Lazy
+    public SfnClient sfnClient(SdkHttpClient awsHttpClient, AwsCredentialsProvider awsCredentialsProvider, AwsCallMetrics callMetrics) {
+        return withEndpoint(SfnClient.builder())
+                .httpClient(awsHttpClient)
+                .credentialsProvider(awsCredentialsProvider)
+                .overrideConfiguration(clientOverrides(callMetrics))
                 .region(Region.of(awsRegion))
                 .build();
     }
 
     @Bean
-    public BudgetsClient cloudWatchClient() {
-        AwsBasicCredentials awsCreds = AwsBasicCredentials.create(awsAccessKeyId, awsSecretAccessKey);
-        return BudgetsClient.builder()
-                .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
+    @Lazy
+    public BudgetsClient cloudWatchClient(SdkHttpClient awsHttpClient, AwsCredentialsProvider awsCredentialsProvider, AwsCallMetrics callMetrics) {
+        return withEndpoint(BudgetsClient.builder())
+                .httpClient(awsHttpClient)
+                .credentialsProvider(awsCredentialsProvider)
+                .overrideConfiguration(clientOverrides(callMetrics))
                 .region(Region.of(awsRegion))
                 .build();
     }
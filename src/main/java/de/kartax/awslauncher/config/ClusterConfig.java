@@ -0,0 +1,42 @@
+package de.kartax.awslauncher.config;
+
+import de.kartax.awslauncher.cluster.ClusterTransport;
+import de.kartax.awslauncher.cluster.FileClusterTransport;
+import de.kartax.awslauncher.cluster.LocalClusterTransport;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@Getter
+public class ClusterConfig {
+
+    @Value("${cluster.transport}")
+    private String transport;
+
+    @Value("${cluster.directory}")
+    private String directory;
+
+    @Value("${cluster.pollMillis}")
+    private long pollMillis;
+
+    @Value("${cluster.retentionSeconds}")
+    private long retentionSeconds;
+
+    /**
+     * "local" runs a single node that is always the leader, "file" joins the nodes sharing {@code cluster.directory}.
+     */
+    @Bean(destroyMethod = "close")
+    public ClusterTransport clusterTransport() throws IOException {
+        return switch (transport) {
+            case "local" -> new LocalClusterTransport();
+            case "file" -> new FileClusterTransport(Path.of(directory), Duration.ofMillis(pollMillis), Duration.ofSeconds(retentionSeconds));
+            default -> throw new IllegalArgumentException("Unknown cluster.transport " + transport);
+        };
+    }
+}
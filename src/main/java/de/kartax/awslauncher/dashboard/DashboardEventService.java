@@ -1,30 +1,194 @@
 package de.kartax.awslauncher.dashboard;
 
+import de.kartax.awslauncher.activity.ActivityLog;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.util.Set;
+
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
+/**
+ * Publishes updates to all registered views without waiting for them. Every listener has a mailbox
+ * holding at most one pending event; if a listener falls behind, newer events are merged into the
+ * pending one, so it only ever receives the latest state instead of a backlog.
+ */
+@Slf4j
 @Service
 public class DashboardEventService {
-    private final Set<DashboardView> listeners = ConcurrentHashMap.newKeySet();
 
-    public void register(DashboardView view) {
-        listeners.add(view);
+    private final Map<DashboardListener, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ActivityLog activityLog;
+    private final ExecutorService deliveryExecutor;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile Consumer<DashboardUpdateEvent> relay = event -> { };
+
+    public DashboardEventService(ActivityLog activityLog, @Value("${dashboard.deliveryThreads}") int deliveryThreads) {
+        this.activityLog = activityLog;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.deliveryExecutor = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "dashboard-delivery-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        deliveryExecutor.shutdownNow();
+    }
+
+    public void register(DashboardListener view) {
+        mailboxes.put(view, new Mailbox(view));
     }
 
-    public void unregister(DashboardView view) {
-        listeners.remove(view);
+    public void unregister(DashboardListener view) {
+        Mailbox mailbox = mailboxes.remove(view);
+        if (mailbox != null) {
+            mailbox.discard();
+        }
     }
 
+    /**
+     * Passes every published event on, e.g. to the other app nodes.
+     */
+    public void setRelay(Consumer<DashboardUpdateEvent> relay) {
+        this.relay = relay;
+    }
+
+    /**
+     * Publishes the event to all views, on this node and through the relay. Its message is written to the
+     * activity log once, views read it from there.
+     */
     public void broadcastEvent(DashboardUpdateEvent event) {
-        listeners.forEach(view -> view.handleUpdate(event));
+        deliverLocally(event);
+        relay.accept(event);
+    }
+
+    /**
+     * Publishes the event to the views of this node only, e.g. an event relayed from another node.
+     */
+    public void deliverLocally(DashboardUpdateEvent event) {
+        if (event.isEmpty()) {
+            // nothing changed, no need to wake every session for it
+            return;
+        }
+        if (event.getMessage() != null) {
+            activityLog.append(event.getMessage());
+        }
+        published.increment();
+        mailboxes.values().forEach(mailbox -> mailbox.offer(event));
     }
 
     public void broadcastMessageOnlyEvent(Object from, String message) {
         var event = new DashboardUpdateEvent(from);
         event.setMessage(message);
-        listeners.forEach(view -> view.handleUpdate(event));
+        broadcastEvent(event);
+    }
+
+    public int getListenerCount() {
+        return mailboxes.size();
+    }
+
+    /**
+     * Number of events waiting in mailboxes for delivery.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    public long getMergedCount() {
+        return merged.sum();
     }
 
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private final class Mailbox {
+
+        private final DashboardListener listener;
+        private DashboardUpdateEvent pending;
+        private boolean draining;
+
+        private Mailbox(DashboardListener listener) {
+            this.listener = listener;
+        }
 
+        private void offer(DashboardUpdateEvent event) {
+            synchronized (this) {
+                if (pending != null) {
+                    pending = pending.mergedWith(event);
+                    merged.increment();
+                    return;
+                }
+                pending = event;
+                queueDepth.incrementAndGet();
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                deliveryExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                log.debug("Delivery stopped, dropping event");
+                discard();
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                DashboardUpdateEvent next;
+                synchronized (this) {
+                    next = pending;
+                    pending = null;
+                    if (next == null) {
+                        draining = false;
+                        return;
+                    }
+                    queueDepth.decrementAndGet();
+                }
+                try {
+                    listener.handleUpdate(next);
+                    delivered.increment();
+                } catch (RuntimeException e) {
+                    log.debug("Error delivering update", e);
+                    dropped.increment();
+                }
+            }
+        }
+
+        /**
+         * Drops the pending event. A drain still running on another thread finds nothing left and ends
+         * itself; it is the only one to clear {@code draining}, so no second drain can start meanwhile.
+         */
+        private synchronized void discard() {
+            if (pending != null) {
+                pending = null;
+                queueDepth.decrementAndGet();
+                dropped.increment();
+            }
+        }
+    }
 }
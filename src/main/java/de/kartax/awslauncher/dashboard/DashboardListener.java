@@ -0,0 +1,9 @@
+package de.kartax.awslauncher.dashboard;
+
+/**
+ * Receives the updates published through {@link DashboardEventService}.
+ */
+public interface DashboardListener {
+
+    void handleUpdate(DashboardUpdateEvent event);
+}
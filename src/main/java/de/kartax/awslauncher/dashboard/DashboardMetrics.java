@@ -0,0 +1,42 @@
+package de.kartax.awslauncher.dashboard;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes the delivery counters of {@link DashboardEventService} as {@code dashboard.*} meters.
+ */
+@Component
+public class DashboardMetrics implements MeterBinder {
+
+    private final DashboardEventService eventService;
+
+    public DashboardMetrics(DashboardEventService eventService) {
+        this.eventService = eventService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("dashboard.listeners", eventService, DashboardEventService::getListenerCount)
+                .description("Registered dashboard views")
+                .register(registry);
+        Gauge.builder("dashboard.queue.depth", eventService, DashboardEventService::getQueueDepth)
+                .description("Mailboxes waiting for delivery")
+                .register(registry);
+        counter(registry, "published", DashboardEventService::getPublishedCount);
+        counter(registry, "delivered", DashboardEventService::getDeliveredCount);
+        counter(registry, "merged", DashboardEventService::getMergedCount);
+        counter(registry, "dropped", DashboardEventService::getDroppedCount);
+    }
+
+    private void counter(MeterRegistry registry, String outcome, ToDoubleFunction<DashboardEventService> count) {
+        FunctionCounter.builder("dashboard.events", eventService, count)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
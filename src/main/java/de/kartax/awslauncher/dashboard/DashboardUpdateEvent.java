@@ -18,13 +18,48 @@ public class DashboardUpdateEvent extends ApplicationEvent {
     private List<Instance> instances;
     private List<Volume> volumes;
     private List<Snapshot> snapshots;
+    private ResourceDelta<Instance> instanceChanges;
+    private ResourceDelta<Volume> volumeChanges;
+    private ResourceDelta<Snapshot> snapshotChanges;
     private List<BigDecimal> currentMonthCost;
     private Map<String, Double> instanceTypesWithPrice;
+    private Boolean stale;
 
     public DashboardUpdateEvent(Object source) {
         super(source);
     }
 
+    /**
+     * Coalesces this event with a newer one into a single event with the same effect on a view.
+     */
+    public DashboardUpdateEvent mergedWith(DashboardUpdateEvent newer) {
+        var merged = new DashboardUpdateEvent(newer.getSource());
+        // messages are in the activity log already, views only need to know there are new ones
+        merged.message = newer.message != null ? newer.message : message;
+        merged.instances = newer.instances != null ? newer.instances : instances;
+        merged.volumes = newer.volumes != null ? newer.volumes : volumes;
+        merged.snapshots = newer.snapshots != null ? newer.snapshots : snapshots;
+        merged.instanceChanges = newer.instances != null ? newer.instanceChanges
+                : ResourceDelta.compose(instanceChanges, newer.instanceChanges, Instance::instanceId);
+        merged.volumeChanges = newer.volumes != null ? newer.volumeChanges
+                : ResourceDelta.compose(volumeChanges, newer.volumeChanges, Volume::volumeId);
+        merged.snapshotChanges = newer.snapshots != null ? newer.snapshotChanges
+                : ResourceDelta.compose(snapshotChanges, newer.snapshotChanges, Snapshot::snapshotId);
+        merged.currentMonthCost = newer.currentMonthCost != null ? newer.currentMonthCost : currentMonthCost;
+        merged.instanceTypesWithPrice = newer.instanceTypesWithPrice != null ? newer.instanceTypesWithPrice : instanceTypesWithPrice;
+        merged.stale = newer.stale != null ? newer.stale : stale;
+        return merged;
+    }
+
+    /**
+     * Whether the event carries nothing a view would show, e.g. the changes of a refresh that found none.
+     */
+    public boolean isEmpty() {
+        return message == null && instances == null && volumes == null && snapshots == null
+                && instanceChanges == null && volumeChanges == null && snapshotChanges == null
+                && currentMonthCost == null && instanceTypesWithPrice == null && stale == null;
+    }
+
     public void appendMessage(String message){
         if(this.getMessage() == null) {
             this.message = message;
@@ -2,6 +2,7 @@ package de.kartax.awslauncher.dashboard;
 
 import com.vaadin.flow.component.AttachEvent;
 import com.vaadin.flow.component.DetachEvent;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.combobox.ComboBox;
 import com.vaadin.flow.component.html.H1;
@@ -9,69 +10,92 @@ import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.textfield.NumberField;
-import com.vaadin.flow.component.textfield.TextArea;
 import com.vaadin.flow.component.textfield.TextField;
+import com.vaadin.flow.data.provider.CallbackDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.SortDirection;
+import com.vaadin.flow.data.value.ValueChangeMode;
 import com.vaadin.flow.router.Route;
 import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.theme.lumo.LumoUtility;
+import de.kartax.awslauncher.activity.ActivityEntry;
+import de.kartax.awslauncher.activity.ActivityLog;
 import de.kartax.awslauncher.aws.AwsBackgroundTask;
 import de.kartax.awslauncher.aws.AwsService;
+import de.kartax.awslauncher.aws.AwsStateCache;
+import de.kartax.awslauncher.aws.AwsTarget;
+import de.kartax.awslauncher.aws.CostTracker;
+import de.kartax.awslauncher.aws.Ec2ClientRegistry;
+import de.kartax.awslauncher.aws.ResourceIndex;
+import de.kartax.awslauncher.aws.ResourceNames;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import software.amazon.awssdk.services.ec2.model.Instance;
 import software.amazon.awssdk.services.ec2.model.Snapshot;
-import software.amazon.awssdk.services.ec2.model.Tag;
 import software.amazon.awssdk.services.ec2.model.Volume;
 
-import java.io.IOException;
 import java.math.RoundingMode;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.Path;
-import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.stream.Stream;
 
 @Slf4j
 @Route("")
-public class DashboardView extends VerticalLayout {
+public class DashboardView extends VerticalLayout implements DashboardListener {
 
-    private static final int MAX_LOG_SIZE = 100;
-    private static final String FILE_LOG_MESSAGES = "logMessages.txt";
     private static final String CURRENT_MONTH_COST_PREFIX = "Current month: ";
+    private static final DateTimeFormatter START_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyy HH:mm")
+            .withZone(ZoneId.systemDefault());
 
 
     public Map<String, Double> instanceTypesWithPrice = new HashMap<>();
 
-    private final LinkedList<String> logMessages = new LinkedList<>();
-    private final TextArea logArea;
+    private long lastLogSequence;
+    private boolean launching;
+    private final LogPanel logArea;
 
     private final DashboardEventService eventService;
     private final AwsBackgroundTask awsBackgroundTask;
     private final AwsService awsService;
+    private final AwsStateCache stateCache;
+    private final ActivityLog activityLog;
+    private final Timer pushTimer;
     private final Grid<Instance> instances;
     private final Grid<Volume> volumes;
     private final Grid<Snapshot> snapshots;
+    private final ResourceDataProvider<Instance> instanceItems = new ResourceDataProvider<>(Instance::instanceId);
+    private final TextField snapshotFilter = new TextField();
+    private ResourceIndex<Volume> volumeIndex;
+    private ResourceIndex<Snapshot> snapshotIndex;
     private final TextField nameInput = new TextField("Name","GamingRig","Name");
     private final NumberField maxSpotPrice = new NumberField("max Spot Price");
     private final Button launchButton = new Button("Launch");
     private final ComboBox<String> instanceTypeComboBox = new ComboBox<>("Instance Type");
     private final Span costBadge = new Span(CURRENT_MONTH_COST_PREFIX );
+    private final Span staleBadge = new Span("Cached data, refreshing...");
 
-    public DashboardView(@Value("${BUILD_TIMESTAMP}") String buildTimestamp, DashboardEventService eventService, AwsBackgroundTask awsBackgroundTask, AwsService awsService) {
+    public DashboardView(@Value("${BUILD_TIMESTAMP}") String buildTimestamp, @Value("${dashboard.logRetention}") int logRetention, DashboardEventService eventService, AwsBackgroundTask awsBackgroundTask, AwsService awsService, AwsStateCache stateCache, ActivityLog activityLog, Ec2ClientRegistry clientRegistry, MeterRegistry meterRegistry) {
         this.eventService = eventService;
         this.awsBackgroundTask = awsBackgroundTask;
         this.awsService = awsService;
+        this.stateCache = stateCache;
+        this.activityLog = activityLog;
+        this.pushTimer = meterRegistry.timer("dashboard.push");
+        this.volumeIndex = stateCache.getState().volumeIndex();
+        this.snapshotIndex = stateCache.getState().snapshotIndex();
 
         var heading = new H1("Aws GamingRig Dashboard");
 
         Span buildBadge = new Span("Build: "+buildTimestamp);
         buildBadge.getElement().getThemeList().add("badge");
         costBadge.getElement().getThemeList().add("badge");
-        var badges = new HorizontalLayout(buildBadge, costBadge);
+        staleBadge.getElement().getThemeList().add("badge contrast");
+        staleBadge.setVisible(false);
+        var badges = new HorizontalLayout(buildBadge, costBadge, staleBadge);
 
         nameInput.setReadOnly(true);
         instanceTypeComboBox.setItems(instanceTypesWithPrice.keySet());
@@ -88,30 +112,56 @@ public class DashboardView extends VerticalLayout {
                 LumoUtility.Gap.MEDIUM);
 
 
-        logArea = new TextArea("Logs");
+        logArea = new LogPanel(logRetention);
         logArea.setWidthFull();
         logArea.setHeight("300px");
-        logArea.setReadOnly(true);
 
 
         instances = new Grid<>();
         instances.addColumn(DashboardView::getNameOrId).setHeader("Instance").setAutoWidth(true);
         instances.addColumn(Instance::instanceType).setHeader("Type").setAutoWidth(true);
         instances.addColumn(instance -> instance.state().nameAsString()).setHeader("State").setAutoWidth(true);
+        instances.addColumn(instance -> AwsTarget.labelOf(instance.tags())).setHeader("Region").setAutoWidth(true)
+                .setVisible(clientRegistry.isMultiTarget());
         instances.setHeight("200px");
+        instances.setItems(instanceItems);
 
         volumes = new Grid<>();
-        volumes.addColumn(DashboardView::getNameOrId).setHeader("Volume").setAutoWidth(true);
-        volumes.addColumn(Volume::size).setHeader("Size").setAutoWidth(true);
-        volumes.addColumn(Volume::stateAsString).setHeader("State").setAutoWidth(true);
+        volumes.addColumn(volume -> volumeIndex.nameOf(volume.volumeId())).setHeader("Volume").setAutoWidth(true)
+                .setSortProperty(ResourceIndex.SORT_NAME);
+        volumes.addColumn(Volume::size).setHeader("Size").setAutoWidth(true)
+                .setSortProperty(ResourceIndex.SORT_SIZE);
+        volumes.addColumn(Volume::stateAsString).setHeader("State").setAutoWidth(true)
+                .setSortProperty(ResourceIndex.SORT_STATE);
+        volumes.addColumn(volume -> AwsTarget.labelOf(volume.tags())).setHeader("Region").setAutoWidth(true)
+                .setVisible(clientRegistry.isMultiTarget());
         volumes.setHeight("200px");
+        volumes.setItems(new CallbackDataProvider<Volume, Void>(
+                query -> fetch(volumeIndex, query, null),
+                query -> volumeIndex.count(null),
+                Volume::volumeId));
 
         snapshots = new Grid<>();
-        snapshots.addColumn(DashboardView::getNameOrId).setHeader("Snapshot").setAutoWidth(true);
-        snapshots.addColumn(Snapshot::volumeSize).setHeader("Size").setAutoWidth(true);
+        snapshots.addColumn(snapshot -> snapshotIndex.nameOf(snapshot.snapshotId())).setHeader("Snapshot").setAutoWidth(true)
+                .setSortProperty(ResourceIndex.SORT_NAME);
+        snapshots.addColumn(Snapshot::volumeSize).setHeader("Size").setAutoWidth(true)
+                .setSortProperty(ResourceIndex.SORT_SIZE);
         snapshots.addColumn(Snapshot::progress).setHeader("Progress").setAutoWidth(true);
-        snapshots.addColumn(Snapshot::stateAsString).setHeader("State").setAutoWidth(true);
-        snapshots.addColumn(DashboardView::getStartDateTime).setHeader("Started").setAutoWidth(true);
+        snapshots.addColumn(Snapshot::stateAsString).setHeader("State").setAutoWidth(true)
+                .setSortProperty(ResourceIndex.SORT_STATE);
+        snapshots.addColumn(DashboardView::getStartDateTime).setHeader("Started").setAutoWidth(true)
+                .setSortProperty(ResourceIndex.SORT_TIME);
+        snapshots.addColumn(snapshot -> AwsTarget.labelOf(snapshot.tags())).setHeader("Region").setAutoWidth(true)
+                .setVisible(clientRegistry.isMultiTarget());
+        snapshots.setItems(new CallbackDataProvider<Snapshot, Void>(
+                query -> fetch(snapshotIndex, query, snapshotFilter.getValue()),
+                query -> snapshotIndex.count(snapshotFilter.getValue()),
+                Snapshot::snapshotId));
+
+        snapshotFilter.setPlaceholder("Filter snapshots");
+        snapshotFilter.setClearButtonVisible(true);
+        snapshotFilter.setValueChangeMode(ValueChangeMode.LAZY);
+        snapshotFilter.addValueChangeListener(event -> snapshots.getDataProvider().refreshAll());
 
         HorizontalLayout instancesAndVolumes = new HorizontalLayout(instances, volumes);
         instancesAndVolumes.addClassNames(LumoUtility.AlignItems.Breakpoint.Large.BASELINE,
@@ -121,85 +171,63 @@ public class DashboardView extends VerticalLayout {
                             LumoUtility.Gap.MEDIUM);
         instancesAndVolumes.setWidthFull();
 
-        add(heading, badges, controls, logArea, instancesAndVolumes, snapshots);
+        add(heading, badges, controls, new Span("Logs"), logArea, instancesAndVolumes, snapshotFilter, snapshots);
         setSizeFull();
     }
 
     private static String getStartDateTime(Snapshot snapshot) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyy HH:mm")
-                .withZone(ZoneId.systemDefault());
-        return formatter.format(snapshot.startTime());
+        return START_TIME_FORMATTER.format(snapshot.startTime());
     }
 
     private static String getNameOrId(Instance instance) {
-        return instance.tags().stream()
-                .filter(tag -> "Name".equals(tag.key()))
-                .map(Tag::value)
-                .findFirst()
-                .orElse(instance.instanceId());
+        return ResourceNames.nameOrId(instance.tags(), instance.instanceId());
     }
 
-    private static String getNameOrId(Snapshot snapshot) {
-        return snapshot.tags().stream()
-                .filter(tag -> "Name".equals(tag.key()))
-                .map(Tag::value)
-                .findFirst()
-                .orElse(snapshot.snapshotId());
+    private static <T> Stream<T> fetch(ResourceIndex<T> index, Query<T, Void> query, String filter) {
+        var sortOrder = query.getSortOrders().stream().findFirst();
+        return index.query(filter,
+                sortOrder.map(order -> order.getSorted()).orElse(null),
+                sortOrder.map(order -> order.getDirection() == SortDirection.ASCENDING).orElse(true),
+                query.getOffset(),
+                query.getLimit());
     }
 
-    private static String getNameOrId(Volume volume) {
-        return volume.tags().stream()
-                .filter(tag -> "Name".equals(tag.key()))
-                .map(Tag::value)
-                .findFirst()
-                .orElse(volume.volumeId());
+    private static <T> void refreshRows(Grid<T> grid, ResourceDelta<T> changes) {
+        if (changes == null || !changes.getAdded().isEmpty() || !changes.getRemoved().isEmpty()) {
+            grid.getDataProvider().refreshAll();
+        } else {
+            changes.getChanged().forEach(grid.getDataProvider()::refreshItem);
+        }
     }
 
     private void launchInstance(){
         log.debug("launchInstance");
-        awsService.launch(nameInput.getValue(), instanceTypeComboBox.getValue());
+        launching = true;
+        updateLaunchButton();
+        UI ui = UI.getCurrent();
+        awsService.launch(nameInput.getValue(), instanceTypeComboBox.getValue())
+                .whenComplete((result, error) -> ui.access(() -> {
+                    launching = false;
+                    updateLaunchButton();
+                }));
     }
 
-    public synchronized void logMessage(String message) {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd.MM.yyy - HH:mm:ss"));
-        String logEntry = String.format("%s : %s", timestamp, message);
-
-        if (logMessages.size() >= MAX_LOG_SIZE) {
-            logMessages.removeFirst();
-        }
-        logMessages.add(logEntry);
-        saveLogMessages();
-        updateLogArea();
+    private void updateLaunchButton() {
+        // check if a launch is in flight or any of the instances is running, starting or pending
+        launchButton.setEnabled(!launching && instanceItems.getAll().stream().noneMatch(instance ->
+                instance.state().nameAsString().startsWith("running") ||
+                instance.state().nameAsString().startsWith("pending")));
     }
 
-    private void saveLogMessages() {
-        try {
-            Path logFilePath = Paths.get(FILE_LOG_MESSAGES);
-            Files.write(logFilePath, logMessages);
-        } catch (IOException e) {
-            log.error("Error saving log messages", e);
+    private void showNewLogEntries() {
+        var entries = activityLog.tail(lastLogSequence);
+        if (entries.isEmpty()) {
+            return;
         }
-    }
-
-    private void loadLogMessages() {
-        try {
-            Path logFilePath = Paths.get("logMessages.txt");
-            if (Files.exists(logFilePath)) {
-                logMessages.clear();
-                logMessages.addAll(Files.readAllLines(logFilePath));
-                updateLogArea();
-            }
-        } catch (IOException e) {
-            log.error("Error loading log messages", e);
+        for (ActivityEntry entry : entries) {
+            logArea.append(entry.text());
+            lastLogSequence = entry.sequence();
         }
-    }
-
-    private void updateLogArea() {
-        StringBuilder logContent = new StringBuilder();
-        for (String logMessage : logMessages) {
-            logContent.append(logMessage).append("\n");
-        }
-        logArea.setValue(logContent.toString());
         logArea.scrollToEnd();
     }
 
@@ -207,9 +235,15 @@ public class DashboardView extends VerticalLayout {
     protected void onAttach(AttachEvent attachEvent) {
         log.debug("onAttach");
         super.onAttach(attachEvent);
-        loadLogMessages();
+        logArea.clear();
+        lastLogSequence = Math.max(0, activityLog.latestSequence() - logArea.getCapacity());
+        showNewLogEntries();
         eventService.register(this);
-        awsBackgroundTask.run();
+        var state = stateCache.getState();
+        if (!state.isEmpty()) {
+            applyUpdate(state.toEvent(this));
+        }
+        awsBackgroundTask.refreshIfStale();
     }
 
     @Override
@@ -219,49 +253,66 @@ public class DashboardView extends VerticalLayout {
         super.onDetach(detachEvent);
     }
 
+    @Override
     public void handleUpdate(DashboardUpdateEvent event) {
         log.debug("handleUpdate");
-        getUI().ifPresent(ui -> ui.access(() -> {
-            if(event.getMessage() != null){
-                logMessage(event.getMessage());
-            }
-            if(event.getInstances() != null) {
-                this.instances.setItems(event.getInstances());
-                // check if any of the instances is running, starting or pending
-                launchButton.setEnabled(event.getInstances().stream().noneMatch(instance ->
-                                instance.state().nameAsString().startsWith("running") ||
-                                instance.state().nameAsString().startsWith("pending")));
-            }
-            if(event.getVolumes() != null){
-                this.volumes.setItems(event.getVolumes());
-            }
-            if(event.getSnapshots() != null) {
-                this.snapshots.setItems(event.getSnapshots());
-            }
-            if(event.getCurrentMonthCost() != null){
-                var spend = event.getCurrentMonthCost().get(0).setScale(2, RoundingMode.HALF_UP).doubleValue();
-                var limit = event.getCurrentMonthCost().get(1).setScale(2, RoundingMode.HALF_UP).doubleValue();
-                var spendWarning = spend + 10.0;
-
-                var cost = spend + "$ / " + limit + "$";
-
-                costBadge.getElement().getThemeList().clear();
-                costBadge.getElement().getThemeList().add("badge");
-                if(spend > limit) {
-                    costBadge.getElement().getThemeList().add("error");
-                }else if(spendWarning > limit) {
-                    costBadge.getElement().getThemeList().add("warning");
-                }else{
-                    costBadge.getElement().getThemeList().add("success");
-                }
-                costBadge.setText(CURRENT_MONTH_COST_PREFIX + cost);
+        getUI().ifPresent(ui -> ui.access(() -> pushTimer.record(() -> {
+            applyUpdate(event);
+            ui.push();
+        })));
+    }
+
+    private void applyUpdate(DashboardUpdateEvent event) {
+        if(event.getMessage() != null){
+            showNewLogEntries();
+        }
+        if(event.getInstances() != null) {
+            instanceItems.setAll(event.getInstances());
+        }
+        if(event.getInstanceChanges() != null) {
+            instanceItems.apply(event.getInstanceChanges());
+        }
+        if(event.getInstances() != null || event.getInstanceChanges() != null) {
+            updateLaunchButton();
+        }
+        if(event.getVolumes() != null || event.getVolumeChanges() != null){
+            volumeIndex = stateCache.getState().volumeIndex();
+            refreshRows(volumes, event.getVolumeChanges());
+        }
+        if(event.getSnapshots() != null || event.getSnapshotChanges() != null) {
+            snapshotIndex = stateCache.getState().snapshotIndex();
+            refreshRows(snapshots, event.getSnapshotChanges());
+        }
+        if(event.getCurrentMonthCost() != null){
+            var cost = event.getCurrentMonthCost();
+            var spend = cost.get(CostTracker.SPEND).setScale(2, RoundingMode.HALF_UP).doubleValue();
+            var limit = cost.get(CostTracker.LIMIT).setScale(2, RoundingMode.HALF_UP).doubleValue();
+            // states saved before the forecast existed only hold spend and limit
+            var forecast = cost.size() > CostTracker.FORECAST ? cost.get(CostTracker.FORECAST).doubleValue() : spend;
+
+            var text = spend + "$ / " + limit + "$";
+            if (cost.size() > CostTracker.DAILY_RUN_RATE) {
+                text += ", forecast " + forecast + "$ (" + cost.get(CostTracker.DAILY_RUN_RATE) + "$/day)";
             }
-            if (event.getInstanceTypesWithPrice() != null && !event.getInstanceTypesWithPrice().isEmpty()) {
-                this.instanceTypesWithPrice = event.getInstanceTypesWithPrice();
-                instanceTypeComboBox.setItems(instanceTypesWithPrice.keySet());
-                instanceTypeComboBox.setValue(event.getInstanceTypesWithPrice().keySet().stream().findFirst().get());
+
+            costBadge.getElement().getThemeList().clear();
+            costBadge.getElement().getThemeList().add("badge");
+            if(spend > limit) {
+                costBadge.getElement().getThemeList().add("error");
+            }else if(forecast > limit) {
+                costBadge.getElement().getThemeList().add("warning");
+            }else{
+                costBadge.getElement().getThemeList().add("success");
             }
-            ui.push();
-        }));
+            costBadge.setText(CURRENT_MONTH_COST_PREFIX + text);
+        }
+        if (event.getInstanceTypesWithPrice() != null && !event.getInstanceTypesWithPrice().isEmpty()) {
+            this.instanceTypesWithPrice = event.getInstanceTypesWithPrice();
+            instanceTypeComboBox.setItems(instanceTypesWithPrice.keySet());
+            instanceTypeComboBox.setValue(event.getInstanceTypesWithPrice().keySet().stream().findFirst().get());
+        }
+        if (event.getStale() != null) {
+            staleBadge.setVisible(event.getStale());
+        }
     }
 }
@@ -0,0 +1,57 @@
+package de.kartax.awslauncher.dashboard;
+
+import com.vaadin.flow.component.html.Div;
+import com.vaadin.flow.dom.Element;
+import com.vaadin.flow.theme.lumo.LumoUtility;
+
+/**
+ * Scrolling log output that only sends new lines to the browser. Lines live in a fixed-size ring;
+ * once it is full, the element of the oldest line is reused for the newest one.
+ */
+public class LogPanel extends Div {
+
+    private final Element[] lines;
+    private int oldest;
+    private int size;
+
+    public LogPanel(int capacity) {
+        this.lines = new Element[capacity];
+        addClassNames(LumoUtility.Overflow.AUTO,
+                LumoUtility.FontSize.SMALL,
+                LumoUtility.Border.ALL,
+                LumoUtility.BorderColor.CONTRAST_20,
+                LumoUtility.BorderRadius.MEDIUM,
+                LumoUtility.Padding.SMALL);
+        getStyle().set("font-family", "var(--lumo-font-family-monospace, monospace)");
+        getStyle().set("white-space", "pre-wrap");
+    }
+
+    public void append(String text) {
+        Element line;
+        if (size < lines.length) {
+            line = new Element("div");
+            lines[(oldest + size) % lines.length] = line;
+            size++;
+        } else {
+            line = lines[oldest];
+            oldest = (oldest + 1) % lines.length;
+            line.removeFromParent();
+        }
+        line.setText(text);
+        getElement().appendChild(line);
+    }
+
+    public void clear() {
+        getElement().removeAllChildren();
+        oldest = 0;
+        size = 0;
+    }
+
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    public void scrollToEnd() {
+        getElement().executeJs("this.scrollTop = this.scrollHeight");
+    }
+}
@@ -0,0 +1,63 @@
+package de.kartax.awslauncher.dashboard;
+
+import com.vaadin.flow.data.provider.ListDataProvider;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * In-memory grid data keyed by resource id, so a {@link ResourceDelta} only refreshes the rows that changed.
+ */
+public class ResourceDataProvider<T> extends ListDataProvider<T> {
+
+    private final Map<String, T> itemsById;
+    private final Function<T, String> idOf;
+
+    public ResourceDataProvider(Function<T, String> idOf) {
+        this(new LinkedHashMap<>(), idOf);
+    }
+
+    private ResourceDataProvider(LinkedHashMap<String, T> itemsById, Function<T, String> idOf) {
+        super(itemsById.values());
+        this.itemsById = itemsById;
+        this.idOf = idOf;
+    }
+
+    @Override
+    public Object getId(T item) {
+        return idOf.apply(item);
+    }
+
+    public Collection<T> getAll() {
+        return itemsById.values();
+    }
+
+    public void setAll(List<T> items) {
+        itemsById.clear();
+        items.forEach(item -> itemsById.put(idOf.apply(item), item));
+        refreshAll();
+    }
+
+    public void apply(ResourceDelta<T> delta) {
+        boolean structural = false;
+        for (String id : delta.getRemoved()) {
+            structural |= itemsById.remove(id) != null;
+        }
+        for (T item : delta.getAdded()) {
+            structural |= itemsById.put(idOf.apply(item), item) == null;
+        }
+        for (T item : delta.getChanged()) {
+            structural |= itemsById.put(idOf.apply(item), item) == null;
+        }
+
+        if (structural) {
+            refreshAll();
+        } else {
+            delta.getAdded().forEach(this::refreshItem);
+            delta.getChanged().forEach(this::refreshItem);
+        }
+    }
+}
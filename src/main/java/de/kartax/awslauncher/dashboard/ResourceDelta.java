@@ -0,0 +1,122 @@
+package de.kartax.awslauncher.dashboard;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The resources that were added, changed or removed between two refreshes, matched by resource id.
+ */
+@Getter
+public class ResourceDelta<T> {
+
+    private final List<T> added;
+    private final List<T> changed;
+    private final List<String> removed;
+
+    public ResourceDelta(List<T> added, List<T> changed, List<String> removed) {
+        this.added = added;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    public static <T> ResourceDelta<T> between(List<T> previous, List<T> current, Function<T, String> idOf) {
+        Map<String, T> previousById = new HashMap<>();
+        if (previous != null) {
+            previous.forEach(item -> previousById.put(idOf.apply(item), item));
+        }
+
+        List<T> added = new ArrayList<>();
+        List<T> changed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (T item : current) {
+            String id = idOf.apply(item);
+            seen.add(id);
+            T before = previousById.get(id);
+            if (before == null) {
+                added.add(item);
+            } else if (!Objects.equals(before, item)) {
+                changed.add(item);
+            }
+        }
+
+        List<String> removed = previousById.keySet().stream()
+                .filter(id -> !seen.contains(id))
+                .toList();
+
+        return new ResourceDelta<>(added, changed, removed);
+    }
+
+    /**
+     * Combines two consecutive deltas into one that has the same effect as applying both in order.
+     */
+    public static <T> ResourceDelta<T> compose(ResourceDelta<T> first, ResourceDelta<T> second, Function<T, String> idOf) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        Map<String, T> added = new LinkedHashMap<>();
+        Map<String, T> changed = new LinkedHashMap<>();
+        Set<String> removed = new LinkedHashSet<>(first.removed);
+        first.added.forEach(item -> added.put(idOf.apply(item), item));
+        first.changed.forEach(item -> changed.put(idOf.apply(item), item));
+
+        for (String id : second.removed) {
+            if (added.remove(id) == null) {
+                changed.remove(id);
+                removed.add(id);
+            }
+        }
+        for (T item : second.added) {
+            String id = idOf.apply(item);
+            if (removed.remove(id)) {
+                changed.put(id, item);
+            } else {
+                added.put(id, item);
+            }
+        }
+        for (T item : second.changed) {
+            String id = idOf.apply(item);
+            if (added.containsKey(id)) {
+                added.put(id, item);
+            } else {
+                changed.put(id, item);
+            }
+        }
+        return new ResourceDelta<>(new ArrayList<>(added.values()), new ArrayList<>(changed.values()), new ArrayList<>(removed));
+    }
+
+    /**
+     * Applies the delta to a copy of the list it was computed from. Added and changed resources replace
+     * the ones with the same id, so applying a delta twice does no harm.
+     */
+    public List<T> applyTo(List<T> list, Function<T, String> idOf) {
+        Map<String, T> byId = new LinkedHashMap<>();
+        if (list != null) {
+            list.forEach(item -> byId.put(idOf.apply(item), item));
+        }
+        removed.forEach(byId::remove);
+        changed.forEach(item -> byId.put(idOf.apply(item), item));
+        added.forEach(item -> byId.put(idOf.apply(item), item));
+        return new ArrayList<>(byId.values());
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+
+    public int size() {
+        return added.size() + changed.size() + removed.size();
+    }
+}
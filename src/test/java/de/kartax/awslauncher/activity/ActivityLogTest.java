@@ -0,0 +1,64 @@
+package de.kartax.awslauncher.activity;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActivityLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tailReturnsEntriesAfterSequenceOldestFirst() {
+        var activityLog = new ActivityLog(dir.resolve("log.txt").toString(), 10, 1024 * 1024);
+        activityLog.append("one");
+        activityLog.append("two");
+        activityLog.append("three");
+
+        assertEquals(List.of(2L, 3L), activityLog.tail(1).stream().map(ActivityEntry::sequence).toList());
+        assertTrue(activityLog.tail(1).get(0).text().endsWith(" : two"));
+        assertEquals(List.of(), activityLog.tail(3));
+        assertEquals(3, activityLog.latestSequence());
+        activityLog.close();
+    }
+
+    @Test
+    void tailOnlyReachesBackAsFarAsRetention() {
+        var activityLog = new ActivityLog(dir.resolve("log.txt").toString(), 3, 1024 * 1024);
+        for (int i = 1; i <= 5; i++) {
+            activityLog.append("entry " + i);
+        }
+
+        assertEquals(List.of(3L, 4L, 5L), activityLog.tail(0).stream().map(ActivityEntry::sequence).toList());
+        assertEquals(List.of(4L, 5L), activityLog.recent(2).stream().map(ActivityEntry::sequence).toList());
+        activityLog.close();
+    }
+
+    @Test
+    void rollsOverToPreviousSegmentAndReloadsBoth() throws Exception {
+        Path file = dir.resolve("log.txt");
+        var activityLog = new ActivityLog(file.toString(), 10, 100);
+        for (int i = 1; i <= 6; i++) {
+            activityLog.append("entry " + i);
+        }
+        activityLog.close();
+
+        Path previous = dir.resolve("log.txt.1");
+        assertTrue(Files.exists(previous));
+        assertTrue(Files.size(file) < 100 + 40, "segment " + Files.size(file));
+
+        var reloaded = new ActivityLog(file.toString(), 4, 100);
+        List<String> texts = reloaded.tail(0).stream().map(ActivityEntry::text).toList();
+        assertEquals(4, texts.size());
+        assertTrue(texts.get(0).endsWith("entry 3"), texts.get(0));
+        assertTrue(texts.get(3).endsWith("entry 6"), texts.get(3));
+        reloaded.close();
+    }
+}
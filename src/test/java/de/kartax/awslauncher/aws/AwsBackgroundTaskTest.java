@@ -0,0 +1,105 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.Volume;
+import software.amazon.awssdk.services.ec2.model.VolumeState;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AwsBackgroundTaskTest {
+
+    private final AwsConfig awsConfig = mock(AwsConfig.class);
+    private AwsBackgroundTask backgroundTask;
+
+    @BeforeEach
+    void setUp() {
+        when(awsConfig.getPollMaxSeconds()).thenReturn(300L);
+        when(awsConfig.getRefreshThreads()).thenReturn(5);
+        backgroundTask = new AwsBackgroundTask(mock(TaskScheduler.class), mock(DashboardEventService.class), mock(Ec2Client.class),
+                awsConfig, mock(CostTracker.class), new AwsStateCache(), mock(SpotPriceHistory.class), mock(InstanceTypeCatalog.class),
+                mock(AwsStateFile.class), mock(FastLaunch.class), mock(SnapshotLifecycle.class), mock(ResourceScope.class),
+                mock(Ec2ClientRegistry.class), mock(ClusterSync.class), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        backgroundTask.stop();
+    }
+
+    @Test
+    void doublesIdleDelayUpToMax() {
+        backgroundTask.resetBackoff(Duration.ofSeconds(60));
+
+        assertEquals(Duration.ofSeconds(60), backgroundTask.nextIdleDelay());
+        assertEquals(Duration.ofSeconds(120), backgroundTask.nextIdleDelay());
+        assertEquals(Duration.ofSeconds(240), backgroundTask.nextIdleDelay());
+        assertEquals(Duration.ofSeconds(300), backgroundTask.nextIdleDelay());
+        assertEquals(Duration.ofSeconds(300), backgroundTask.nextIdleDelay());
+    }
+
+    @Test
+    void resetRestartsBackoff() {
+        backgroundTask.resetBackoff(Duration.ofSeconds(60));
+        backgroundTask.nextIdleDelay();
+        backgroundTask.nextIdleDelay();
+
+        backgroundTask.resetBackoff(Duration.ofSeconds(5));
+
+        assertEquals(Duration.ofSeconds(5), backgroundTask.nextIdleDelay());
+        assertEquals(Duration.ofSeconds(10), backgroundTask.nextIdleDelay());
+    }
+
+    @Test
+    void selectsSectionsInTransition() {
+        AwsState state = state(
+                List.of(instance("i-1", InstanceStateName.RUNNING), instance("i-2", InstanceStateName.PENDING)),
+                List.of(Volume.builder().volumeId("vol-1").state(VolumeState.CREATING).build()),
+                List.of(snapshot("snap-1", SnapshotState.PENDING, "40%")));
+
+        assertEquals(Set.of(RefreshSection.INSTANCES, RefreshSection.VOLUMES, RefreshSection.SNAPSHOTS),
+                AwsBackgroundTask.changingSections(state, id -> false));
+    }
+
+    @Test
+    void leavesOutStableAndSelfTrackedSections() {
+        AwsState state = state(
+                List.of(instance("i-1", InstanceStateName.RUNNING), instance("i-2", InstanceStateName.STOPPED)),
+                List.of(Volume.builder().volumeId("vol-1").state(VolumeState.AVAILABLE).build()),
+                List.of(snapshot("snap-tracked", SnapshotState.PENDING, "40%"), snapshot("snap-done", SnapshotState.PENDING, "100%")));
+
+        assertEquals(Set.of(), AwsBackgroundTask.changingSections(state, "snap-tracked"::equals));
+        assertEquals(Set.of(), AwsBackgroundTask.changingSections(AwsState.EMPTY, id -> false));
+    }
+
+    private static AwsState state(List<Instance> instances, List<Volume> volumes, List<Snapshot> snapshots) {
+        return new AwsState(1, Instant.now(), Set.of(), instances, volumes, snapshots, null, null,
+                ResourceIndex.ofVolumes(volumes), ResourceIndex.ofSnapshots(snapshots));
+    }
+
+    private static Instance instance(String id, InstanceStateName state) {
+        return Instance.builder().instanceId(id).state(InstanceState.builder().name(state).build()).build();
+    }
+
+    private static Snapshot snapshot(String id, SnapshotState state, String progress) {
+        return Snapshot.builder().snapshotId(id).state(state).progress(progress).build();
+    }
+}
@@ -0,0 +1,49 @@
+package de.kartax.awslauncher.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.kartax.awslauncher.config.AwsConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class AwsEventControllerTest {
+
+    private final AwsEventIngestor ingestor = mock(AwsEventIngestor.class);
+    private final AwsConfig awsConfig = mock(AwsConfig.class);
+    private final AwsEventController controller = new AwsEventController(ingestor, awsConfig);
+    private final JsonNode event = new ObjectMapper().createObjectNode();
+
+    @Test
+    void rejectsEverythingWithoutConfiguredToken() {
+        when(awsConfig.getEventsToken()).thenReturn("");
+
+        assertEquals(HttpStatus.FORBIDDEN, controller.receive(null, event).getStatusCode());
+        assertEquals(HttpStatus.FORBIDDEN, controller.receive("", event).getStatusCode());
+        verifyNoInteractions(ingestor);
+    }
+
+    @Test
+    void rejectsWrongOrMissingToken() {
+        when(awsConfig.getEventsToken()).thenReturn("my-token");
+
+        assertEquals(HttpStatus.UNAUTHORIZED, controller.receive(null, event).getStatusCode());
+        assertEquals(HttpStatus.UNAUTHORIZED, controller.receive("my-token2", event).getStatusCode());
+        verifyNoInteractions(ingestor);
+    }
+
+    @Test
+    void acceptsMatchingToken() {
+        when(awsConfig.getEventsToken()).thenReturn("my-token");
+        when(ingestor.ingest(any(JsonNode.class))).thenReturn(true);
+
+        assertEquals(HttpStatus.ACCEPTED, controller.receive("my-token", event).getStatusCode());
+        verify(ingestor).ingest(event);
+    }
+}
@@ -0,0 +1,122 @@
+package de.kartax.awslauncher.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.kartax.awslauncher.config.AwsConfig;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesResponse;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.Volume;
+import software.amazon.awssdk.services.ec2.model.VolumeState;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class AwsEventIngestorTest {
+
+    private final Ec2Client ec2Client = mock(Ec2Client.class);
+    private final DashboardEventService eventService = mock(DashboardEventService.class);
+    private final AwsStateCache stateCache = new AwsStateCache();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private AwsEventIngestor ingestor;
+
+    @BeforeEach
+    void setUp() {
+        AwsConfig awsConfig = mock(AwsConfig.class);
+        when(awsConfig.getScopeTagKey()).thenReturn("Name");
+        when(awsConfig.getScopeTagValues()).thenReturn(List.of("GamingRig"));
+        when(awsConfig.getScopeInstanceStates()).thenReturn(List.of());
+        when(awsConfig.getScopeVolumeStates()).thenReturn(List.of());
+        when(awsConfig.getScopeSnapshotStates()).thenReturn(List.of());
+        ingestor = new AwsEventIngestor(stateCache, eventService, ec2Client, new ResourceScope(awsConfig), mock(Ec2ClientRegistry.class));
+
+        var event = new DashboardUpdateEvent(this);
+        event.setInstances(List.of(Instance.builder()
+                .instanceId("i-0123456789abcdef0")
+                .state(InstanceState.builder().name(InstanceStateName.PENDING).build())
+                .tags(Tag.builder().key("Name").value("GamingRig").build())
+                .build()));
+        event.setVolumes(List.of(Volume.builder().volumeId("vol-01234567").state(VolumeState.AVAILABLE).build()));
+        event.setSnapshots(List.of(Snapshot.builder().snapshotId("snap-01234567").state(SnapshotState.PENDING).progress("42%").build()));
+        stateCache.update(event);
+    }
+
+    @Test
+    void patchesInstanceState() throws IOException {
+        assertTrue(ingestor.ingest(load("instance-state-change.json")));
+
+        assertEquals("running", stateCache.getState().instances().get(0).state().nameAsString());
+        verify(eventService).broadcastEvent(argThat(event -> event.getInstanceChanges().getChanged().size() == 1));
+        verifyNoInteractions(ec2Client);
+    }
+
+    @Test
+    void completesSnapshot() throws IOException {
+        assertTrue(ingestor.ingest(load("snapshot-notification.json")));
+
+        Snapshot snapshot = stateCache.getState().snapshots().get(0);
+        assertEquals(SnapshotState.COMPLETED, snapshot.state());
+        assertEquals("100%", snapshot.progress());
+        verifyNoInteractions(ec2Client);
+    }
+
+    @Test
+    void removesDeletedVolume() throws IOException {
+        assertTrue(ingestor.ingest(load("volume-notification.json")));
+
+        assertTrue(stateCache.getState().volumes().isEmpty());
+        verify(eventService).broadcastEvent(argThat(event -> event.getVolumeChanges().getRemoved().equals(List.of("vol-01234567"))));
+    }
+
+    @Test
+    void ignoresVolumesOutsideScope() throws IOException {
+        when(ec2Client.describeVolumes(any(DescribeVolumesRequest.class))).thenReturn(DescribeVolumesResponse.builder()
+                .volumes(Volume.builder()
+                        .volumeId("vol-89abcdef")
+                        .state(VolumeState.AVAILABLE)
+                        .tags(Tag.builder().key("Name").value("build-cache").build())
+                        .build())
+                .build());
+        JsonNode event = load("volume-notification.json");
+        ((ObjectNode) event.path("detail")).put("result", "available");
+        ((ArrayNode) event.path("resources")).set(0, "arn:aws:ec2:eu-central-1:123456789012:volume/vol-89abcdef");
+
+        ingestor.ingest(event);
+
+        assertEquals(List.of("vol-01234567"), stateCache.getState().volumes().stream().map(Volume::volumeId).toList());
+    }
+
+    @Test
+    void ignoresUnknownEvents() throws IOException {
+        assertFalse(ingestor.ingest(objectMapper.readTree("{\"detail-type\": \"AWS API Call via CloudTrail\"}")));
+    }
+
+    private JsonNode load(String name) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/events/" + name)) {
+            return objectMapper.readTree(in);
+        }
+    }
+}
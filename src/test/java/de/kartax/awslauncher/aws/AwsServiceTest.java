@@ -0,0 +1,249 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.sfn.SfnClient;
+import software.amazon.awssdk.services.sfn.model.DescribeExecutionRequest;
+import software.amazon.awssdk.services.sfn.model.DescribeExecutionResponse;
+import software.amazon.awssdk.services.sfn.model.ExecutionAlreadyExistsException;
+import software.amazon.awssdk.services.sfn.model.ExecutionListItem;
+import software.amazon.awssdk.services.sfn.model.ExecutionStatus;
+import software.amazon.awssdk.services.sfn.model.ListExecutionsRequest;
+import software.amazon.awssdk.services.sfn.model.ListExecutionsResponse;
+import software.amazon.awssdk.services.sfn.model.StartExecutionRequest;
+import software.amazon.awssdk.services.sfn.model.StartExecutionResponse;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AwsServiceTest {
+
+    private static final Instant T0 = Instant.parse("2024-11-01T18:00:00Z");
+    private static final String EXECUTION_ARN = "arn:aws:states:eu-central-1:507136533040:execution:LaunchRecentGamingRig:key";
+
+    private final SfnClient sfnClient = mock(SfnClient.class);
+    private final LaunchTracker launchTracker = mock(LaunchTracker.class);
+    private final FastLaunch fastLaunch = mock(FastLaunch.class);
+    private final AwsConfig awsConfig = mock(AwsConfig.class);
+    private final AwsStateCache stateCache = new AwsStateCache();
+    private final CompletableFuture<ExecutionStatus> tracked = new CompletableFuture<>();
+    private AwsService awsService;
+
+    @BeforeEach
+    void setUp() {
+        when(awsConfig.getLaunchDedupeMinutes()).thenReturn(10L);
+        when(awsConfig.getLaunchTimeoutMinutes()).thenReturn(60L);
+        when(sfnClient.startExecution(any(StartExecutionRequest.class)))
+                .thenReturn(StartExecutionResponse.builder().executionArn(EXECUTION_ARN).build());
+        when(sfnClient.listExecutions(any(ListExecutionsRequest.class))).thenReturn(ListExecutionsResponse.builder().build());
+        when(launchTracker.track(EXECUTION_ARN)).thenReturn(tracked);
+        awsService = new AwsService(mock(DashboardEventService.class), sfnClient, mock(AwsBackgroundTask.class),
+                launchTracker, fastLaunch, stateCache, awsConfig, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        awsService.stop();
+    }
+
+    @Test
+    void keyCombinesNameTypeAndWindow() {
+        assertEquals("GamingRig-g4dn-xlarge-2884140", awsService.idempotencyKey("GamingRig", "g4dn.xlarge", T0));
+        assertEquals("GamingRig-g4dn-xlarge-2884140", awsService.idempotencyKey("GamingRig", "g4dn.xlarge", T0.plusSeconds(599)));
+        assertEquals("GamingRig-g4dn-xlarge-2884141", awsService.idempotencyKey("GamingRig", "g4dn.xlarge", T0.plusSeconds(600)));
+        assertEquals("My-Rig--2-g4dn-xlarge-2884140", awsService.idempotencyKey(" My Rig #2 ", "g4dn.xlarge", T0));
+        String longest = AwsService.attemptKey(awsService.idempotencyKey("GamingRig".repeat(10), "g4dn.xlarge", T0), 9);
+        assertTrue(longest.length() <= 64, longest);
+        assertEquals("GamingRig-g4dn-xlarge-2884140-2", AwsService.attemptKey("GamingRig-g4dn-xlarge-2884140", 2));
+    }
+
+    @Test
+    void rejectsLaunchWithoutInstanceType() throws Exception {
+        CompletableFuture<String> launch = awsService.launch("GamingRig", null);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> launch.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, error.getCause());
+        assertNotSame(launch, awsService.launch("GamingRig", "g4dn.xlarge"));
+    }
+
+    @Test
+    void failsWhenLookupThrows() {
+        when(sfnClient.listExecutions(any(ListExecutionsRequest.class))).thenThrow(new IllegalStateException("broken"));
+
+        CompletableFuture<String> launch = awsService.launch("GamingRig", "g4dn.xlarge");
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> launch.get(1, TimeUnit.SECONDS));
+        assertEquals("broken", error.getCause().getMessage());
+    }
+
+    @Test
+    void refusesLaunchSucceededInPreviousWindow() {
+        when(sfnClient.listExecutions(any(ListExecutionsRequest.class))).thenReturn(ListExecutionsResponse.builder()
+                .executions(ExecutionListItem.builder()
+                        .name("GamingRig-g4dn-xlarge-1")
+                        .executionArn(EXECUTION_ARN)
+                        .status(ExecutionStatus.SUCCEEDED)
+                        .startDate(Instant.now().minusSeconds(60))
+                        .build())
+                .build());
+
+        CompletableFuture<String> launch = awsService.launch("GamingRig", "g4dn.xlarge");
+
+        assertThrows(ExecutionException.class, () -> launch.get(1, TimeUnit.SECONDS));
+        verify(sfnClient, never()).startExecution(any(StartExecutionRequest.class));
+    }
+
+    @Test
+    void joinsRunningExecutionOfSameKey() throws Exception {
+        when(sfnClient.startExecution(any(StartExecutionRequest.class)))
+                .thenThrow(ExecutionAlreadyExistsException.builder().message("exists").build());
+        when(sfnClient.describeExecution(any(DescribeExecutionRequest.class)))
+                .thenReturn(DescribeExecutionResponse.builder().status(ExecutionStatus.RUNNING).build());
+        when(launchTracker.track(anyString())).thenReturn(tracked);
+
+        CompletableFuture<String> launch = awsService.launch("GamingRig", "g4dn.xlarge");
+        verify(launchTracker, timeout(1000)).track(argThat((String arn) ->
+                arn.startsWith("arn:aws:states:eu-central-1:507136533040:execution:LaunchRecentGamingRig:GamingRig-g4dn-xlarge-")));
+        tracked.complete(ExecutionStatus.SUCCEEDED);
+
+        assertTrue(launch.get(1, TimeUnit.SECONDS).contains(":execution:"));
+        verify(sfnClient, times(1)).startExecution(any(StartExecutionRequest.class));
+    }
+
+    @Test
+    void retriesUnderNextKeyWhenExecutionFailed() throws Exception {
+        when(sfnClient.startExecution(any(StartExecutionRequest.class)))
+                .thenThrow(ExecutionAlreadyExistsException.builder().message("exists").build())
+                .thenReturn(StartExecutionResponse.builder().executionArn(EXECUTION_ARN).build());
+        when(sfnClient.describeExecution(any(DescribeExecutionRequest.class)))
+                .thenReturn(DescribeExecutionResponse.builder().status(ExecutionStatus.FAILED).build());
+
+        CompletableFuture<String> launch = awsService.launch("GamingRig", "g4dn.xlarge");
+        verify(launchTracker, timeout(1000)).track(EXECUTION_ARN);
+        tracked.complete(ExecutionStatus.SUCCEEDED);
+
+        assertEquals(EXECUTION_ARN, launch.get(1, TimeUnit.SECONDS));
+        verify(sfnClient).startExecution(argThat((StartExecutionRequest request) -> request.name().endsWith("-2")));
+    }
+
+    @Test
+    void failsLaunchThatNeverFinishes() {
+        when(awsConfig.getLaunchTimeoutMinutes()).thenReturn(0L);
+
+        CompletableFuture<String> launch = awsService.launch("GamingRig", "g4dn.xlarge");
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> launch.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+    }
+
+    @Test
+    void joinsLaunchInFlight() throws Exception {
+        CompletableFuture<String> first = awsService.launch("GamingRig", "g4dn.xlarge");
+        assertSame(first, awsService.launch("gamingrig", "g4dn.xlarge"));
+
+        verify(sfnClient, timeout(1000)).startExecution(argThat((StartExecutionRequest request) ->
+                request.name().startsWith("GamingRig-g4dn-xlarge-")));
+        tracked.complete(ExecutionStatus.SUCCEEDED);
+
+        assertEquals(EXECUTION_ARN, first.get(1, TimeUnit.SECONDS));
+        assertNotSame(first, awsService.launch("GamingRig", "g4dn.xlarge"));
+    }
+
+    @Test
+    void failsWhenExecutionFails() {
+        CompletableFuture<String> launch = awsService.launch("GamingRig", "g4dn.xlarge");
+        verify(launchTracker, timeout(1000)).track(EXECUTION_ARN);
+        tracked.complete(ExecutionStatus.FAILED);
+
+        assertThrows(ExecutionException.class, () -> launch.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void passesKeyAsClientTokenOfFastLaunch() throws Exception {
+        when(awsConfig.isFastLaunch()).thenReturn(true);
+        when(fastLaunch.launch(anyString(), anyString(), anyString())).thenReturn(Optional.of("i-new"));
+
+        assertEquals("i-new", awsService.launch("GamingRig", "g4dn.xlarge").get(1, TimeUnit.SECONDS));
+        verify(fastLaunch).launch(any(), any(), argThat((String token) -> token.startsWith("GamingRig-g4dn-xlarge-")));
+        verify(sfnClient, never()).startExecution(any(StartExecutionRequest.class));
+    }
+
+    @Test
+    void refusesFastLaunchWhenTokenStartedLiveInstance() {
+        when(awsConfig.isFastLaunch()).thenReturn(true);
+        String key = awsService.idempotencyKey("GamingRig", "g4dn.xlarge", Instant.now());
+        when(fastLaunch.launchesOf("GamingRig")).thenReturn(List.of(launched("i-earlier", key, InstanceStateName.PENDING)));
+
+        CompletableFuture<String> launch = awsService.launch("GamingRig", "g4dn.xlarge");
+
+        assertThrows(ExecutionException.class, () -> launch.get(1, TimeUnit.SECONDS));
+        verify(fastLaunch, never()).launch(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void usesNextTokenWhenEarlierInstanceIsGone() throws Exception {
+        when(awsConfig.isFastLaunch()).thenReturn(true);
+        String key = awsService.idempotencyKey("GamingRig", "g4dn.xlarge", Instant.now());
+        when(fastLaunch.launchesOf("GamingRig")).thenReturn(List.of(launched("i-earlier", key, InstanceStateName.TERMINATED)));
+        when(fastLaunch.launch(anyString(), anyString(), anyString())).thenReturn(Optional.of("i-new"));
+
+        assertEquals("i-new", awsService.launch("GamingRig", "g4dn.xlarge").get(1, TimeUnit.SECONDS));
+        verify(fastLaunch).launch(any(), any(), argThat((String token) -> token.equals(key + "-2")));
+    }
+
+    @Test
+    void refusesRigAlreadyRunning() {
+        var event = new DashboardUpdateEvent(this);
+        event.setInstances(List.of(Instance.builder()
+                .instanceId("i-0123456789abcdef0")
+                .state(InstanceState.builder().name(InstanceStateName.RUNNING).build())
+                .tags(Tag.builder().key("Name").value("GamingRig").build())
+                .build()));
+        stateCache.update(event);
+
+        CompletableFuture<String> launch = awsService.launch("GamingRig", "g4dn.xlarge");
+
+        assertThrows(ExecutionException.class, () -> launch.get(1, TimeUnit.SECONDS));
+        verify(sfnClient, never()).startExecution(any(StartExecutionRequest.class));
+    }
+
+    private static Instance launched(String instanceId, String clientToken, InstanceStateName state) {
+        return Instance.builder()
+                .instanceId(instanceId)
+                .clientToken(clientToken)
+                .launchTime(Instant.now().minusSeconds(30))
+                .state(InstanceState.builder().name(state).build())
+                .tags(Tag.builder().key("Name").value("GamingRig").build())
+                .build();
+    }
+}
@@ -0,0 +1,77 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+import software.amazon.awssdk.services.ec2.model.Volume;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AwsStateCacheTest {
+
+    private final AwsStateCache stateCache = new AwsStateCache();
+
+    @BeforeEach
+    void setUp() {
+        var sections = new DashboardUpdateEvent(this);
+        sections.setInstances(List.of(instance(InstanceStateName.RUNNING)));
+        sections.setVolumes(List.of(Volume.builder().volumeId("vol-1").build()));
+        assertTrue(stateCache.restore(AwsState.restored(Instant.parse("2024-11-01T18:00:00Z"), sections)));
+    }
+
+    @Test
+    void marksOnlyRestoredSections() {
+        assertEquals(Set.of(RefreshSection.INSTANCES, RefreshSection.VOLUMES), stateCache.getState().restoredSections());
+        assertTrue(stateCache.getState().toEvent(this).getStale());
+    }
+
+    @Test
+    void patchKeepsSectionRestored() {
+        var changes = stateCache.patch(current -> {
+            var event = new DashboardUpdateEvent(this);
+            event.setInstances(List.of(instance(InstanceStateName.STOPPED)));
+            return event;
+        });
+
+        assertTrue(stateCache.getState().restored());
+        assertNull(changes.getStale());
+    }
+
+    @Test
+    void staysRestoredUntilEverySectionIsRefreshed() {
+        var instances = new DashboardUpdateEvent(this);
+        instances.setInstances(List.of(instance(InstanceStateName.STOPPED)));
+        assertNull(stateCache.update(instances).getStale());
+        assertEquals(Set.of(RefreshSection.VOLUMES), stateCache.getState().restoredSections());
+
+        var volumes = new DashboardUpdateEvent(this);
+        volumes.setVolumes(List.of());
+        assertFalse(stateCache.update(volumes).getStale());
+        assertFalse(stateCache.getState().restored());
+    }
+
+    @Test
+    void leavesOutSectionsThatDidNotChange() {
+        var refresh = new DashboardUpdateEvent(this);
+        refresh.setInstances(List.of(instance(InstanceStateName.RUNNING)));
+
+        var changes = stateCache.update(refresh);
+
+        assertNull(changes.getInstanceChanges());
+        assertTrue(changes.isEmpty());
+    }
+
+    private static Instance instance(InstanceStateName state) {
+        return Instance.builder().instanceId("i-1").state(InstanceState.builder().name(state).build()).build();
+    }
+}
@@ -0,0 +1,227 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.cluster.LocalClusterTransport;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import de.kartax.awslauncher.dashboard.DashboardUpdateEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class ClusterSyncTest {
+
+    private final LocalClusterTransport.Hub hub = new LocalClusterTransport.Hub();
+    private final LocalClusterTransport leaderTransport = new LocalClusterTransport(hub);
+    private final LocalClusterTransport followerTransport = new LocalClusterTransport(hub);
+    private final AwsStateCache leaderCache = new AwsStateCache();
+    private final AwsStateCache followerCache = new AwsStateCache();
+    private final DashboardEventService leaderEvents = mock(DashboardEventService.class);
+    private final DashboardEventService followerEvents = mock(DashboardEventService.class);
+    private final SimpleMeterRegistry leaderMeters = new SimpleMeterRegistry();
+    private ClusterSync leader;
+    private ClusterSync follower;
+    private Consumer<DashboardUpdateEvent> leaderRelay;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        leader = new ClusterSync(leaderTransport, leaderCache, leaderEvents, leaderMeters);
+        follower = new ClusterSync(followerTransport, followerCache, followerEvents, new SimpleMeterRegistry());
+        ArgumentCaptor<Consumer<DashboardUpdateEvent>> relay = ArgumentCaptor.forClass(Consumer.class);
+        verify(leaderEvents).setRelay(relay.capture());
+        leaderRelay = relay.getValue();
+    }
+
+    @AfterEach
+    void tearDown() {
+        leader.stop();
+        follower.stop();
+    }
+
+    @Test
+    void firstNodeLeadsAndNextTakesOver() {
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+        Runnable takeOver = mock(Runnable.class);
+        follower.onLeadership(takeOver);
+
+        leaderTransport.close();
+
+        assertTrue(follower.isLeader());
+        verify(takeOver).run();
+    }
+
+    @Test
+    void replicatesChangedSectionsOnly() {
+        var refresh = new DashboardUpdateEvent(this);
+        refresh.setInstances(List.of(instance("i-1", InstanceStateName.RUNNING)));
+        refresh.setCurrentMonthCost(List.of(new BigDecimal("12.34"), new BigDecimal("50")));
+        refresh.setMessage("refreshed");
+        leaderRelay.accept(leaderCache.update(refresh));
+
+        verify(followerEvents, timeout(1000)).deliverLocally(argThat(event -> "refreshed".equals(event.getMessage())
+                && event.getInstanceChanges() != null && event.getVolumeChanges() == null));
+        AwsState replicated = followerCache.getState();
+        assertEquals("i-1", replicated.instances().get(0).instanceId());
+        assertEquals(InstanceStateName.RUNNING, replicated.instances().get(0).state().name());
+        assertEquals(new BigDecimal("12.34"), replicated.currentMonthCost().get(0));
+        assertNull(replicated.volumes());
+        assertEquals(leaderCache.getState().refreshedAt(), replicated.refreshedAt());
+    }
+
+    @Test
+    void appliesChangesToReplicatedList() {
+        var refresh = new DashboardUpdateEvent(mock(AwsBackgroundTask.class));
+        refresh.setInstances(List.of(instance("i-1", InstanceStateName.RUNNING), instance("i-2", InstanceStateName.RUNNING)));
+        leaderRelay.accept(leaderCache.update(refresh));
+        var next = new DashboardUpdateEvent(mock(AwsBackgroundTask.class));
+        next.setInstances(List.of(instance("i-2", InstanceStateName.STOPPED), instance("i-3", InstanceStateName.PENDING)));
+        next.setMessage("refreshed again");
+        leaderRelay.accept(leaderCache.update(next));
+
+        verify(followerEvents, timeout(1000)).deliverLocally(argThat(event -> "refreshed again".equals(event.getMessage())));
+        List<Instance> replicated = followerCache.getState().instances();
+        assertEquals(List.of("i-2", "i-3"), replicated.stream().map(Instance::instanceId).toList());
+        assertEquals(InstanceStateName.STOPPED, replicated.get(0).state().name());
+    }
+
+    @Test
+    void doesNotRelayUnchangedRefresh() {
+        var refresh = new DashboardUpdateEvent(mock(AwsBackgroundTask.class));
+        refresh.setInstances(List.of(instance("i-1", InstanceStateName.RUNNING)));
+        refresh.setCurrentMonthCost(List.of(new BigDecimal("12.34")));
+        leaderRelay.accept(leaderCache.update(refresh));
+        var same = new DashboardUpdateEvent(mock(AwsBackgroundTask.class));
+        same.setInstances(List.of(instance("i-1", InstanceStateName.RUNNING)));
+        same.setCurrentMonthCost(List.of(new BigDecimal("12.34")));
+        leaderRelay.accept(leaderCache.update(same));
+        var message = new DashboardUpdateEvent(this);
+        message.setMessage("after refresh");
+        leaderRelay.accept(message);
+
+        verify(followerEvents, timeout(1000)).deliverLocally(argThat(event -> "after refresh".equals(event.getMessage())));
+        assertEquals(2, leaderMeters.summary("cluster.message.bytes", "type", "state").count());
+    }
+
+    @Test
+    void sendsFullStateToNodeThatJoinsLater() {
+        var refresh = new DashboardUpdateEvent(mock(AwsBackgroundTask.class));
+        refresh.setInstances(List.of(instance("i-1", InstanceStateName.RUNNING)));
+        refresh.setCurrentMonthCost(List.of(new BigDecimal("12.34")));
+        refresh.setInstanceTypesWithPrice(Map.of("g4dn.xlarge", 0.25));
+        leaderRelay.accept(leaderCache.update(refresh));
+        var next = new DashboardUpdateEvent(mock(AwsBackgroundTask.class));
+        next.setInstances(List.of(instance("i-1", InstanceStateName.STOPPED)));
+        leaderRelay.accept(leaderCache.update(next));
+
+        AwsStateCache lateCache = new AwsStateCache();
+        ClusterSync late = new ClusterSync(new LocalClusterTransport(hub), lateCache, mock(DashboardEventService.class), new SimpleMeterRegistry());
+
+        AwsState synced = awaitInstances(lateCache);
+        assertEquals(InstanceStateName.STOPPED, synced.instances().get(0).state().name());
+        assertEquals(new BigDecimal("12.34"), synced.currentMonthCost().get(0));
+        assertEquals(0.25, synced.instanceTypesWithPrice().get("g4dn.xlarge"));
+        late.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void dropsPatchOfOutdatedSection() throws Exception {
+        var refresh = new DashboardUpdateEvent(mock(AwsBackgroundTask.class));
+        refresh.setInstances(List.of(instance("i-1", InstanceStateName.RUNNING)));
+        leaderRelay.accept(leaderCache.update(refresh));
+
+        DashboardEventService lateEvents = mock(DashboardEventService.class);
+        AwsStateCache lateCache = new AwsStateCache();
+        LocalClusterTransport lateTransport = new LocalClusterTransport(hub);
+        ClusterSync late = new ClusterSync(lateTransport, lateCache, lateEvents, new SimpleMeterRegistry());
+        ArgumentCaptor<Consumer<DashboardUpdateEvent>> lateRelay = ArgumentCaptor.forClass(Consumer.class);
+        verify(lateEvents).setRelay(lateRelay.capture());
+        awaitInstances(lateCache);
+        var requested = new CompletableFuture<Duration>();
+        leader.onRefreshRequest(requested::complete);
+
+        // the late node stops listening and patches the list it has, which misses the next refresh
+        lateTransport.close();
+        var next = new DashboardUpdateEvent(mock(AwsBackgroundTask.class));
+        next.setInstances(List.of(instance("i-1", InstanceStateName.STOPPED)));
+        next.setMessage("refreshed again");
+        leaderRelay.accept(leaderCache.update(next));
+        verify(followerEvents, timeout(1000)).deliverLocally(argThat(event -> "refreshed again".equals(event.getMessage())));
+        var patch = new DashboardUpdateEvent(this);
+        patch.setInstances(List.of(instance("i-1", InstanceStateName.RUNNING), instance("i-2", InstanceStateName.STOPPED)));
+        patch.setMessage("patched");
+        lateRelay.getValue().accept(lateCache.patch(current -> patch));
+
+        verify(followerEvents, timeout(1000)).deliverLocally(argThat(event -> "patched".equals(event.getMessage())));
+        assertEquals(1, followerCache.getState().instances().size());
+        assertEquals(InstanceStateName.STOPPED, followerCache.getState().instances().get(0).state().name());
+        assertEquals(Duration.ZERO, requested.get(1, TimeUnit.SECONDS));
+        assertEquals(1, leaderCache.getState().instances().size());
+        late.stop();
+    }
+
+    @Test
+    void skipsStateRestoredFromDisk() {
+        var restored = new DashboardUpdateEvent(this);
+        restored.setInstances(List.of(instance("i-1", InstanceStateName.STOPPED)));
+        restored.setStale(true);
+        leaderRelay.accept(restored);
+
+        var message = new DashboardUpdateEvent(this);
+        message.setMessage("after restore");
+        leaderRelay.accept(message);
+
+        verify(followerEvents, timeout(1000)).deliverLocally(argThat(event -> "after restore".equals(event.getMessage())));
+        assertTrue(followerCache.getState().isEmpty());
+    }
+
+    @Test
+    void forwardsRefreshRequestsToLeader() throws Exception {
+        var requested = new CompletableFuture<Duration>();
+        leader.onRefreshRequest(requested::complete);
+
+        follower.requestRefresh(Duration.ofSeconds(5));
+
+        assertEquals(Duration.ofSeconds(5), requested.get(1, TimeUnit.SECONDS));
+    }
+
+    private static AwsState awaitInstances(AwsStateCache cache) {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (cache.getState().instances() == null && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertNotNull(cache.getState().instances(), "no state received");
+        return cache.getState();
+    }
+
+    private static Instance instance(String id, InstanceStateName state) {
+        return Instance.builder()
+                .instanceId(id)
+                .instanceType("g4dn.xlarge")
+                .state(InstanceState.builder().name(state).build())
+                .build();
+    }
+}
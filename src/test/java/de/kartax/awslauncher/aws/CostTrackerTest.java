@@ -0,0 +1,144 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.budgets.BudgetsClient;
+import software.amazon.awssdk.services.budgets.model.Budget;
+import software.amazon.awssdk.services.budgets.model.DescribeBudgetsRequest;
+import software.amazon.awssdk.services.budgets.model.DescribeBudgetsResponse;
+import software.amazon.awssdk.services.budgets.model.Spend;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceState;
+import software.amazon.awssdk.services.ec2.model.InstanceStateName;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CostTrackerTest {
+
+    private static final Instant NOV_11 = Instant.parse("2024-11-11T00:00:00Z");
+
+    private final BudgetsClient budgetsClient = mock(BudgetsClient.class);
+    private final SpotPriceHistory spotPriceHistory = mock(SpotPriceHistory.class);
+    private final AwsConfig awsConfig = mock(AwsConfig.class);
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() {
+        when(awsConfig.getBudgetAccountId()).thenReturn("12345678");
+        when(awsConfig.getBudgetName()).thenReturn("max monthly");
+        when(awsConfig.getBudgetCacheHours()).thenReturn(8L);
+        when(awsConfig.getCostRunRateDays()).thenReturn(7L);
+        when(awsConfig.getCostHistoryFile()).thenReturn(dir.resolve("cost-history.bin").toString());
+        when(spotPriceHistory.current("g4dn.xlarge")).thenReturn(OptionalDouble.of(0.5));
+    }
+
+    @Test
+    void cachesBudgetForCachePeriod() {
+        budget("10", "50");
+        CostTracker tracker = new CostTracker(budgetsClient, spotPriceHistory, awsConfig);
+
+        tracker.refreshBudget(NOV_11);
+        tracker.refreshBudget(NOV_11.plus(Duration.ofHours(7)));
+        verify(budgetsClient, times(1)).describeBudgets(any(DescribeBudgetsRequest.class));
+
+        tracker.refreshBudget(NOV_11.plus(Duration.ofHours(9)));
+        verify(budgetsClient, times(2)).describeBudgets(any(DescribeBudgetsRequest.class));
+    }
+
+    @Test
+    void keepsCacheAcrossRestarts() {
+        budget("10", "50");
+        new CostTracker(budgetsClient, spotPriceHistory, awsConfig).refreshBudget(NOV_11);
+
+        CostTracker restarted = new CostTracker(budgetsClient, spotPriceHistory, awsConfig);
+        restarted.refreshBudget(NOV_11.plus(Duration.ofHours(1)));
+
+        verify(budgetsClient, times(1)).describeBudgets(any(DescribeBudgetsRequest.class));
+        assertEquals(List.of(amount("10.00"), amount("50.00"), amount("30.00"), amount("1.00")),
+                restarted.currentMonthCost(List.of(), NOV_11));
+    }
+
+    @Test
+    void forecastsFromRunRateAndRunningInstances() {
+        budget("10", "50");
+        CostTracker tracker = new CostTracker(budgetsClient, spotPriceHistory, awsConfig);
+        tracker.refreshBudget(NOV_11);
+
+        // ten days at 1$ a day, twenty left
+        assertEquals(List.of(amount("10.00"), amount("50.00"), amount("30.00"), amount("1.00")),
+                tracker.currentMonthCost(List.of(), NOV_11));
+
+        // two hours at 0.5$ since the budget was fetched
+        var running = instance(InstanceStateName.RUNNING, NOV_11.minus(Duration.ofHours(2)));
+        var stopped = instance(InstanceStateName.STOPPED, NOV_11.minus(Duration.ofHours(2)));
+        List<BigDecimal> cost = tracker.currentMonthCost(List.of(running, stopped), NOV_11.plus(Duration.ofHours(2)));
+        assertEquals(amount("11.00"), cost.get(CostTracker.SPEND));
+        assertEquals(amount("30.92"), cost.get(CostTracker.FORECAST));
+    }
+
+    @Test
+    void runRateFollowsRecentSamples() {
+        CostTracker tracker = new CostTracker(budgetsClient, spotPriceHistory, awsConfig);
+        budget("2", "50");
+        tracker.refreshBudget(Instant.parse("2024-11-20T00:00:00Z"));
+        budget("16", "50");
+        tracker.refreshBudget(Instant.parse("2024-11-27T00:00:00Z"));
+
+        // 14$ in the last seven days, not 16$ over 26 days
+        assertEquals(amount("2.00"), tracker.currentMonthCost(List.of(), Instant.parse("2024-11-27T00:00:00Z"))
+                .get(CostTracker.DAILY_RUN_RATE));
+    }
+
+    @Test
+    void startsOverWithNewMonth() {
+        budget("40", "50");
+        CostTracker tracker = new CostTracker(budgetsClient, spotPriceHistory, awsConfig);
+        tracker.refreshBudget(Instant.parse("2024-10-31T20:00:00Z"));
+
+        assertEquals(List.of(amount("0.00"), amount("50.00"), amount("0.00"), amount("0.00")),
+                tracker.currentMonthCost(List.of(), Instant.parse("2024-11-01T02:00:00Z")));
+    }
+
+    private void budget(String spend, String limit) {
+        when(budgetsClient.describeBudgets(any(DescribeBudgetsRequest.class))).thenReturn(DescribeBudgetsResponse.builder()
+                .budgets(Budget.builder()
+                        .budgetName("max monthly")
+                        .calculatedSpend(calculated -> calculated.actualSpend(spend(spend)))
+                        .budgetLimit(spend(limit))
+                        .build())
+                .build());
+    }
+
+    private static Spend spend(String amount) {
+        return Spend.builder().amount(new BigDecimal(amount)).unit("USD").build();
+    }
+
+    private static BigDecimal amount(String value) {
+        return new BigDecimal(value);
+    }
+
+    private static Instance instance(InstanceStateName state, Instant launchTime) {
+        return Instance.builder()
+                .instanceId("i-" + state)
+                .instanceType("g4dn.xlarge")
+                .launchTime(launchTime)
+                .state(InstanceState.builder().name(state).build())
+                .build();
+    }
+}
@@ -0,0 +1,159 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.BlockDeviceMapping;
+import software.amazon.awssdk.services.ec2.model.DeregisterImageRequest;
+import software.amazon.awssdk.services.ec2.model.DeregisterImageResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeImagesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeImagesResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.awssdk.services.ec2.model.Image;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.RegisterImageRequest;
+import software.amazon.awssdk.services.ec2.model.RegisterImageResponse;
+import software.amazon.awssdk.services.ec2.model.RunInstancesRequest;
+import software.amazon.awssdk.services.ec2.model.RunInstancesResponse;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.VolumeType;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FastLaunchTest {
+
+    private static final Instant T0 = Instant.parse("2024-11-01T18:00:00Z");
+
+    private final Ec2Client ec2Client = mock(Ec2Client.class);
+    private final AwsConfig awsConfig = mock(AwsConfig.class);
+    private final FastLaunch fastLaunch = new FastLaunch(ec2Client, awsConfig);
+
+    @BeforeEach
+    void setUp() {
+        when(awsConfig.isFastLaunch()).thenReturn(true);
+        when(awsConfig.getLaunchSecurityGroupId()).thenReturn("sg-013a25ec5fe71f446");
+        when(awsConfig.getLaunchKeyName()).thenReturn("GamingRig");
+        when(ec2Client.describeImages(any(DescribeImagesRequest.class))).thenReturn(DescribeImagesResponse.builder()
+                .images(Image.builder()
+                        .imageId("ami-old")
+                        .creationDate("2024-10-01T18:00:00.000Z")
+                        .tags(tag("Name", FastLaunch.IMAGE_NAME_TAG), tag(FastLaunch.SOURCE_SNAPSHOT_TAG, "snap-old"))
+                        .build())
+                .build());
+        when(ec2Client.registerImage(any(RegisterImageRequest.class)))
+                .thenReturn(RegisterImageResponse.builder().imageId("ami-new").build());
+        when(ec2Client.runInstances(any(RunInstancesRequest.class)))
+                .thenReturn(RunInstancesResponse.builder().instances(Instance.builder().instanceId("i-new").build()).build());
+    }
+
+    @Test
+    void launchesFromImageFoundAfterRestart() {
+        assertEquals(Optional.of("i-new"), fastLaunch.launch("GamingRig", "g4dn.xlarge", "GamingRig-g4dn-xlarge-1"));
+
+        verify(ec2Client).runInstances(argThat((RunInstancesRequest request) -> request.imageId().equals("ami-old")
+                && request.instanceTypeAsString().equals("g4dn.xlarge")
+                && request.blockDeviceMappings().get(0).ebs().volumeType() == VolumeType.GP3
+                && request.securityGroupIds().equals(List.of("sg-013a25ec5fe71f446"))
+                && request.clientToken().equals("GamingRig-g4dn-xlarge-1")));
+        verify(ec2Client, never()).registerImage(any(RegisterImageRequest.class));
+    }
+
+    @Test
+    void deregistersAsSoonAsNewerSnapshotIsPending() {
+        fastLaunch.reconcile(List.of(
+                snapshot("snap-old", SnapshotState.COMPLETED, 0),
+                snapshot("snap-new", SnapshotState.PENDING, 60)));
+
+        verify(ec2Client).deregisterImage(argThat((DeregisterImageRequest request) -> request.imageId().equals("ami-old")));
+        verify(ec2Client, never()).registerImage(any(RegisterImageRequest.class));
+        assertEquals(Optional.empty(), fastLaunch.launch("GamingRig", "g4dn.xlarge", "GamingRig-g4dn-xlarge-1"));
+    }
+
+    @Test
+    void registersImageForCompletedSnapshot() {
+        fastLaunch.reconcile(List.of(snapshot("snap-new", SnapshotState.COMPLETED, 60)));
+
+        verify(ec2Client).registerImage(argThat((RegisterImageRequest request) ->
+                request.blockDeviceMappings().get(0).ebs().snapshotId().equals("snap-new")));
+        assertEquals(Optional.of("i-new"), fastLaunch.launch("GamingRig", "g4dn.xlarge", "GamingRig-g4dn-xlarge-1"));
+        verify(ec2Client).runInstances(argThat((RunInstancesRequest request) -> request.imageId().equals("ami-new")));
+    }
+
+    @Test
+    void keepsImageForUnchangedSnapshot() {
+        fastLaunch.reconcile(List.of(snapshot("snap-old", SnapshotState.COMPLETED, 0)));
+
+        verify(ec2Client, never()).deregisterImage(any(DeregisterImageRequest.class));
+        verify(ec2Client, never()).registerImage(any(RegisterImageRequest.class));
+    }
+
+    @Test
+    void retriesFailedDeregistrationWithoutUsingOldImage() {
+        when(ec2Client.deregisterImage(any(DeregisterImageRequest.class)))
+                .thenThrow(Ec2Exception.builder().message("throttled").build())
+                .thenReturn(DeregisterImageResponse.builder().build());
+        List<Snapshot> snapshots = List.of(
+                snapshot("snap-old", SnapshotState.COMPLETED, 0),
+                snapshot("snap-new", SnapshotState.PENDING, 60));
+
+        fastLaunch.reconcile(snapshots);
+        assertEquals(Optional.empty(), fastLaunch.launch("GamingRig", "g4dn.xlarge", "GamingRig-g4dn-xlarge-1"));
+        fastLaunch.reconcile(snapshots);
+        fastLaunch.reconcile(snapshots);
+
+        verify(ec2Client, times(2)).deregisterImage(argThat((DeregisterImageRequest request) -> request.imageId().equals("ami-old")));
+    }
+
+    @Test
+    void deregistersOlderImagesAndReadsSnapshotOfUntaggedImage() {
+        when(ec2Client.describeImages(any(DescribeImagesRequest.class))).thenReturn(DescribeImagesResponse.builder()
+                .images(Image.builder()
+                                .imageId("ami-older")
+                                .creationDate("2024-09-01T18:00:00.000Z")
+                                .tags(tag("Name", FastLaunch.IMAGE_NAME_TAG), tag(FastLaunch.SOURCE_SNAPSHOT_TAG, "snap-older"))
+                                .build(),
+                        Image.builder()
+                                .imageId("ami-old")
+                                .creationDate("2024-10-01T18:00:00.000Z")
+                                .tags(tag("Name", FastLaunch.IMAGE_NAME_TAG))
+                                .blockDeviceMappings(BlockDeviceMapping.builder()
+                                        .deviceName("/dev/sda1")
+                                        .ebs(ebs -> ebs.snapshotId("snap-old"))
+                                        .build())
+                                .build())
+                .build());
+
+        fastLaunch.reconcile(List.of(snapshot("snap-old", SnapshotState.COMPLETED, 0)));
+
+        verify(ec2Client).deregisterImage(argThat((DeregisterImageRequest request) -> request.imageId().equals("ami-older")));
+        verify(ec2Client, never()).deregisterImage(argThat((DeregisterImageRequest request) -> request.imageId().equals("ami-old")));
+        verify(ec2Client, never()).registerImage(any(RegisterImageRequest.class));
+    }
+
+    private static Snapshot snapshot(String id, SnapshotState state, long second) {
+        return Snapshot.builder()
+                .snapshotId(id)
+                .state(state)
+                .startTime(T0.plusSeconds(second))
+                .tags(tag("Name", "GamingRig"))
+                .build();
+    }
+
+    private static Tag tag(String key, String value) {
+        return Tag.builder().key(key).value(value).build();
+    }
+}
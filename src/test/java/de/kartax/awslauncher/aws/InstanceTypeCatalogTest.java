@@ -0,0 +1,111 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeInstanceTypesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeInstanceTypesResponse;
+import software.amazon.awssdk.services.ec2.model.GpuDeviceInfo;
+import software.amazon.awssdk.services.ec2.model.GpuInfo;
+import software.amazon.awssdk.services.ec2.model.InstanceTypeInfo;
+import software.amazon.awssdk.services.ec2.model.MemoryInfo;
+import software.amazon.awssdk.services.ec2.model.VCpuInfo;
+import software.amazon.awssdk.services.ec2.paginators.DescribeInstanceTypesIterable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InstanceTypeCatalogTest {
+
+    @TempDir
+    Path dir;
+
+    private final Ec2Client ec2Client = mock(Ec2Client.class);
+    private final AwsConfig awsConfig = mock(AwsConfig.class);
+
+    @BeforeEach
+    void setUp() {
+        when(awsConfig.getCatalogFile()).thenReturn(dir.resolve("instance-types.txt").toString());
+        when(awsConfig.getCatalogTtlHours()).thenReturn(24L);
+        when(awsConfig.getCatalogInstanceTypes()).thenReturn(List.of("g4dn.*", "g5.*"));
+        when(awsConfig.getCatalogMinGpus()).thenReturn(1);
+        when(awsConfig.getCatalogMinVcpus()).thenReturn(4);
+        when(awsConfig.getCatalogMaxVcpus()).thenReturn(8);
+        when(awsConfig.getCatalogMinMemoryMiB()).thenReturn(16384L);
+        when(ec2Client.describeInstanceTypesPaginator(any(DescribeInstanceTypesRequest.class))).thenAnswer(invocation ->
+                new DescribeInstanceTypesIterable(ec2Client, invocation.getArgument(0)));
+        when(ec2Client.describeInstanceTypes(any(DescribeInstanceTypesRequest.class))).thenReturn(DescribeInstanceTypesResponse.builder()
+                .instanceTypes(
+                        type("g5.2xlarge", 1, 8, 32768),
+                        type("g4dn.xlarge", 1, 4, 16384),
+                        type("g4dn.12xlarge", 4, 48, 196608),
+                        type("g4dn.small", 1, 2, 8192),
+                        type("c5.xlarge", 0, 4, 16384))
+                .build());
+    }
+
+    @Test
+    void keepsTypesMatchingCriteriaSortedByVcpus() {
+        var catalog = new InstanceTypeCatalog(ec2Client, awsConfig);
+
+        assertEquals(List.of("g4dn.xlarge", "g5.2xlarge"), catalog.getInstanceTypes());
+    }
+
+    @Test
+    void reusesCatalogSavedOnDisk() {
+        new InstanceTypeCatalog(ec2Client, awsConfig).getInstanceTypes();
+
+        assertEquals(List.of("g4dn.xlarge", "g5.2xlarge"), new InstanceTypeCatalog(ec2Client, awsConfig).getInstanceTypes());
+        verify(ec2Client, times(1)).describeInstanceTypes(any(DescribeInstanceTypesRequest.class));
+    }
+
+    @Test
+    void rediscoversWhenCriteriaChange() {
+        new InstanceTypeCatalog(ec2Client, awsConfig).getInstanceTypes();
+        when(awsConfig.getCatalogMaxVcpus()).thenReturn(4);
+
+        assertEquals(List.of("g4dn.xlarge"), new InstanceTypeCatalog(ec2Client, awsConfig).getInstanceTypes());
+        verify(ec2Client, times(2)).describeInstanceTypes(any(DescribeInstanceTypesRequest.class));
+    }
+
+    @Test
+    void rediscoversOnceTtlHasPassed() throws Exception {
+        long twoDaysAgo = Instant.now().minus(Duration.ofDays(2)).getEpochSecond();
+        Files.write(dir.resolve("instance-types.txt"), List.of("# fetched " + twoDaysAgo,
+                "# criteria g4dn.*,g5.* gpus>=1 vcpus=4..8 memoryMiB>=16384", "g4dn.2xlarge"));
+
+        assertEquals(List.of("g4dn.xlarge", "g5.2xlarge"), new InstanceTypeCatalog(ec2Client, awsConfig).getInstanceTypes());
+        verify(ec2Client, times(1)).describeInstanceTypes(any(DescribeInstanceTypesRequest.class));
+    }
+
+    @Test
+    void usesFreshCatalogFromDisk() throws Exception {
+        Files.write(dir.resolve("instance-types.txt"), List.of("# fetched " + Instant.now().getEpochSecond(),
+                "# criteria g4dn.*,g5.* gpus>=1 vcpus=4..8 memoryMiB>=16384", "g4dn.2xlarge"));
+
+        assertEquals(List.of("g4dn.2xlarge"), new InstanceTypeCatalog(ec2Client, awsConfig).getInstanceTypes());
+        verify(ec2Client, never()).describeInstanceTypes(any(DescribeInstanceTypesRequest.class));
+    }
+
+    private static InstanceTypeInfo type(String name, int gpus, int vCpus, long memoryMiB) {
+        return InstanceTypeInfo.builder()
+                .instanceType(name)
+                .gpuInfo(gpus == 0 ? null : GpuInfo.builder().gpus(GpuDeviceInfo.builder().count(gpus).build()).build())
+                .vCpuInfo(VCpuInfo.builder().defaultVCpus(vCpus).build())
+                .memoryInfo(MemoryInfo.builder().sizeInMiB(memoryMiB).build())
+                .build();
+    }
+}
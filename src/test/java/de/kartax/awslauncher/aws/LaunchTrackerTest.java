@@ -0,0 +1,175 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.TaskScheduler;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.sfn.SfnClient;
+import software.amazon.awssdk.services.sfn.model.ExecutionStatus;
+import software.amazon.awssdk.services.sfn.model.GetExecutionHistoryRequest;
+import software.amazon.awssdk.services.sfn.model.GetExecutionHistoryResponse;
+import software.amazon.awssdk.services.sfn.model.HistoryEvent;
+import software.amazon.awssdk.services.sfn.model.HistoryEventType;
+import software.amazon.awssdk.services.sfn.model.SfnException;
+import software.amazon.awssdk.services.sfn.model.StateEnteredEventDetails;
+import software.amazon.awssdk.services.sfn.model.StateExitedEventDetails;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LaunchTrackerTest {
+
+    private static final String EXECUTION_ARN = "arn:aws:states:eu-central-1:123456789012:execution:LaunchRecentGamingRig:test";
+    private static final Instant T0 = Instant.parse("2024-11-01T18:00:00Z");
+
+    private final SfnClient sfnClient = mock(SfnClient.class);
+    private final DashboardEventService eventService = mock(DashboardEventService.class);
+    private final AwsConfig awsConfig = mock(AwsConfig.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LaunchTracker tracker = new LaunchTracker(sfnClient, eventService, mock(TaskScheduler.class), awsConfig, meterRegistry);
+
+    @BeforeEach
+    void setUp() {
+        when(awsConfig.getLaunchPollMinSeconds()).thenReturn(2L);
+        when(awsConfig.getLaunchPollMaxSeconds()).thenReturn(30L);
+        when(awsConfig.getLaunchTimeoutMinutes()).thenReturn(60L);
+    }
+
+    @Test
+    void followsHistoryIncrementallyAndRecordsStepDurations() {
+        when(sfnClient.getExecutionHistory(any(GetExecutionHistoryRequest.class))).thenReturn(
+                page(null,
+                        entered(4, "CreateAMI", 3),
+                        exited(3, "GetSnapshot", 3),
+                        entered(2, "GetSnapshot", 1),
+                        event(1, HistoryEventType.EXECUTION_STARTED, 0)),
+                page("next",
+                        event(6, HistoryEventType.EXECUTION_SUCCEEDED, 64),
+                        exited(5, "CreateAMI", 63)),
+                page(null,
+                        entered(4, "CreateAMI", 3),
+                        exited(3, "GetSnapshot", 3)));
+        var tracking = tracking();
+
+        assertFalse(tracker.poll(tracking));
+        assertFalse(tracking.getResult().isDone());
+        assertTrue(tracker.poll(tracking));
+
+        assertEquals(ExecutionStatus.SUCCEEDED, tracking.getResult().join());
+        assertEquals(2, meterRegistry.timer("aws.launch.step", "step", "GetSnapshot").totalTime(TimeUnit.SECONDS));
+        assertEquals(60, meterRegistry.timer("aws.launch.step", "step", "CreateAMI").totalTime(TimeUnit.SECONDS));
+        verify(sfnClient).getExecutionHistory(argThat((GetExecutionHistoryRequest request) -> "next".equals(request.nextToken())));
+        verify(eventService).broadcastMessageOnlyEvent(tracker, "Launch succeeded in 1m 4s: GetSnapshot 2s, CreateAMI 1m 0s");
+    }
+
+    @Test
+    void backsOffWhileNothingHappens() {
+        when(sfnClient.getExecutionHistory(any(GetExecutionHistoryRequest.class))).thenReturn(
+                page(null, event(1, HistoryEventType.EXECUTION_STARTED, 0)));
+        var tracking = tracking();
+
+        tracker.poll(tracking);
+        assertEquals(Duration.ofSeconds(2), tracking.getDelay());
+        tracker.poll(tracking);
+        assertEquals(Duration.ofSeconds(4), tracking.getDelay());
+        for (int i = 0; i < 5; i++) {
+            tracker.poll(tracking);
+        }
+        assertEquals(Duration.ofSeconds(30), tracking.getDelay());
+        verify(sfnClient, times(7)).getExecutionHistory(any(GetExecutionHistoryRequest.class));
+    }
+
+    @Test
+    void keepsTrackingWhenThrottled() {
+        when(sfnClient.getExecutionHistory(any(GetExecutionHistoryRequest.class)))
+                .thenThrow(error(400, "ThrottlingException"))
+                .thenReturn(page(null, event(2, HistoryEventType.EXECUTION_FAILED, 5), event(1, HistoryEventType.EXECUTION_STARTED, 0)));
+        var tracking = tracking();
+
+        assertFalse(tracker.poll(tracking));
+        assertEquals(Duration.ofSeconds(4), tracking.getDelay());
+        assertTrue(tracker.poll(tracking));
+        assertEquals(ExecutionStatus.FAILED, tracking.getResult().join());
+    }
+
+    @Test
+    void stopsOnErrorThatRetryingCannotFix() {
+        SfnException accessDenied = error(400, "AccessDeniedException");
+        when(sfnClient.getExecutionHistory(any(GetExecutionHistoryRequest.class))).thenThrow(accessDenied);
+        var tracking = tracking();
+
+        assertTrue(tracker.poll(tracking));
+        assertSame(accessDenied, assertThrows(CompletionException.class, () -> tracking.getResult().join()).getCause());
+        verify(sfnClient, times(1)).getExecutionHistory(any(GetExecutionHistoryRequest.class));
+    }
+
+    @Test
+    void givesUpAfterTooManyErrorsInARow() {
+        when(sfnClient.getExecutionHistory(any(GetExecutionHistoryRequest.class))).thenThrow(error(500, "InternalFailure"));
+        var tracking = tracking();
+
+        for (int i = 0; i < 9; i++) {
+            assertFalse(tracker.poll(tracking));
+        }
+        assertTrue(tracker.poll(tracking));
+        assertTrue(tracking.getResult().isCompletedExceptionally());
+    }
+
+    @Test
+    void givesUpAfterTimeout() {
+        var tracking = new LaunchTracker.Tracking(EXECUTION_ARN, Duration.ofSeconds(2), Instant.now().minusSeconds(1));
+
+        assertTrue(tracker.poll(tracking));
+        assertTrue(tracking.getResult().isCompletedExceptionally());
+        verify(sfnClient, never()).getExecutionHistory(any(GetExecutionHistoryRequest.class));
+    }
+
+    private static LaunchTracker.Tracking tracking() {
+        return new LaunchTracker.Tracking(EXECUTION_ARN, Duration.ofSeconds(2), Instant.now().plus(Duration.ofHours(1)));
+    }
+
+    private static SfnException error(int statusCode, String errorCode) {
+        return (SfnException) SfnException.builder()
+                .statusCode(statusCode)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode(errorCode).errorMessage(errorCode).build())
+                .build();
+    }
+
+    private static GetExecutionHistoryResponse page(String nextToken, HistoryEvent... events) {
+        return GetExecutionHistoryResponse.builder().events(events).nextToken(nextToken).build();
+    }
+
+    private static HistoryEvent event(long id, HistoryEventType type, long second) {
+        return HistoryEvent.builder().id(id).type(type).timestamp(T0.plusSeconds(second)).build();
+    }
+
+    private static HistoryEvent entered(long id, String step, long second) {
+        return event(id, HistoryEventType.TASK_STATE_ENTERED, second).toBuilder()
+                .stateEnteredEventDetails(StateEnteredEventDetails.builder().name(step).build())
+                .build();
+    }
+
+    private static HistoryEvent exited(long id, String step, long second) {
+        return event(id, HistoryEventType.TASK_STATE_EXITED, second).toBuilder()
+                .stateExitedEventDetails(StateExitedEventDetails.builder().name(step).build())
+                .build();
+    }
+}
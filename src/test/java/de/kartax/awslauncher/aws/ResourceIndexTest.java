@@ -0,0 +1,71 @@
+package de.kartax.awslauncher.aws;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.Tag;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResourceIndexTest {
+
+    private static final Instant T0 = Instant.parse("2024-11-01T18:00:00Z");
+
+    private final ResourceIndex<Snapshot> index = ResourceIndex.ofSnapshots(List.of(
+            snapshot("snap-b", "beta", 300, 60, SnapshotState.COMPLETED),
+            snapshot("snap-a", "Alpha", 100, 120, SnapshotState.PENDING),
+            snapshot("snap-c", null, 200, 0, SnapshotState.ERROR)));
+
+    @Test
+    void keepsAwsOrderWithoutSort() {
+        assertEquals(List.of("snap-b", "snap-a", "snap-c"), ids(null, true));
+    }
+
+    @Test
+    void sortsByNameIgnoringCaseAndFallsBackToId() {
+        assertEquals(List.of("snap-a", "snap-b", "snap-c"), ids(ResourceIndex.SORT_NAME, true));
+        assertEquals(List.of("snap-c", "snap-b", "snap-a"), ids(ResourceIndex.SORT_NAME, false));
+    }
+
+    @Test
+    void sortsBySizeTimeAndState() {
+        assertEquals(List.of("snap-a", "snap-c", "snap-b"), ids(ResourceIndex.SORT_SIZE, true));
+        assertEquals(List.of("snap-c", "snap-b", "snap-a"), ids(ResourceIndex.SORT_TIME, false));
+        assertEquals(List.of("snap-b", "snap-c", "snap-a"), ids(ResourceIndex.SORT_STATE, true));
+    }
+
+    @Test
+    void filtersByNameOrIdAndPages() {
+        assertEquals(1, index.count("ALPHA"));
+        assertEquals(3, index.count("snap-"));
+        assertEquals(3, index.count(" "));
+        assertEquals(List.of("snap-b"), index.query("snap-", ResourceIndex.SORT_NAME, true, 1, 1)
+                .map(Snapshot::snapshotId).toList());
+    }
+
+    @Test
+    void looksUpNamesById() {
+        assertEquals("Alpha", index.nameOf("snap-a"));
+        assertEquals("snap-c", index.nameOf("snap-c"));
+        assertEquals("snap-unknown", index.nameOf("snap-unknown"));
+    }
+
+    private List<String> ids(String sortProperty, boolean ascending) {
+        return index.query(null, sortProperty, ascending, 0, Integer.MAX_VALUE).map(Snapshot::snapshotId).toList();
+    }
+
+    private static Snapshot snapshot(String id, String name, int size, long ageSeconds, SnapshotState state) {
+        var builder = Snapshot.builder()
+                .snapshotId(id)
+                .volumeSize(size)
+                .startTime(T0.minusSeconds(ageSeconds))
+                .state(state);
+        if (name != null) {
+            builder.tags(Tag.builder().key("Name").value(name).build());
+        }
+        return builder.build();
+    }
+}
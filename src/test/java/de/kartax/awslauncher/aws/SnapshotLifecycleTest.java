@@ -0,0 +1,233 @@
+package de.kartax.awslauncher.aws;
+
+import de.kartax.awslauncher.config.AwsConfig;
+import de.kartax.awslauncher.dashboard.DashboardEventService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.TaskScheduler;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.CreateSnapshotRequest;
+import software.amazon.awssdk.services.ec2.model.CreateSnapshotResponse;
+import software.amazon.awssdk.services.ec2.model.DeleteSnapshotRequest;
+import software.amazon.awssdk.services.ec2.model.DeleteSnapshotResponse;
+import software.amazon.awssdk.services.ec2.model.DeleteVolumeRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSnapshotsRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeSnapshotsResponse;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeVolumesResponse;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.awssdk.services.ec2.model.Snapshot;
+import software.amazon.awssdk.services.ec2.model.SnapshotState;
+import software.amazon.awssdk.services.ec2.model.Tag;
+import software.amazon.awssdk.services.ec2.model.Volume;
+import software.amazon.awssdk.services.ec2.model.VolumeState;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SnapshotLifecycleTest {
+
+    private static final Instant T0 = Instant.parse("2024-11-01T18:00:00Z");
+
+    private final Ec2Client ec2Client = mock(Ec2Client.class);
+    private final AwsStateCache stateCache = new AwsStateCache();
+    private final DashboardEventService eventService = mock(DashboardEventService.class);
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+    private final FastLaunch fastLaunch = mock(FastLaunch.class);
+    private final AwsConfig awsConfig = mock(AwsConfig.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SnapshotLifecycle lifecycle;
+
+    @BeforeEach
+    void setUp() {
+        when(awsConfig.isSnapshotLifecycle()).thenReturn(true);
+        when(awsConfig.getAwsRegion()).thenReturn("eu-central-1");
+        when(awsConfig.getSnapshotPollMinSeconds()).thenReturn(5L);
+        when(awsConfig.getSnapshotPollMaxSeconds()).thenReturn(60L);
+        when(awsConfig.getSnapshotKeepLast()).thenReturn(1);
+        when(awsConfig.getSnapshotKeepDailyDays()).thenReturn(0);
+        when(awsConfig.getSnapshotDeleteConcurrency()).thenReturn(4);
+        lifecycle = new SnapshotLifecycle(ec2Client, stateCache, eventService, taskScheduler, fastLaunch,
+                mock(Ec2ClientRegistry.class), awsConfig, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        lifecycle.stop();
+    }
+
+    @Test
+    void pollsProgressAtAdaptiveIntervalAndShowsIt() {
+        Instant startedAt = Instant.now().minusSeconds(60);
+        when(ec2Client.createSnapshot(any(CreateSnapshotRequest.class)))
+                .thenReturn(CreateSnapshotResponse.builder().snapshotId("snap-new").startTime(startedAt).build());
+        when(ec2Client.describeSnapshots(any(DescribeSnapshotsRequest.class))).thenReturn(DescribeSnapshotsResponse.builder()
+                .snapshots(snapshot("snap-new", SnapshotState.PENDING, startedAt).toBuilder().progress("50%").build())
+                .build());
+
+        detached(volume(VolumeState.AVAILABLE));
+
+        lifecycle.reconcile();
+
+        verify(ec2Client).describeVolumes(argThat((DescribeVolumesRequest request) -> request.filters().stream()
+                .anyMatch(filter -> "tag:Name".equals(filter.name()) && filter.values().equals(List.of("GamingRig")))));
+        verify(ec2Client, times(1)).createSnapshot(argThat((CreateSnapshotRequest request) -> "vol-1".equals(request.volumeId())
+                && request.tagSpecifications().get(0).tags().contains(tag("SourceVolume", "vol-1"))));
+        assertTrue(lifecycle.isTracking("snap-new"));
+        ArgumentCaptor<Runnable> poll = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).schedule(poll.capture(), any(Instant.class));
+
+        poll.getValue().run();
+
+        // half way after a minute, so about a minute to go: look again in half of that
+        ArgumentCaptor<Instant> next = ArgumentCaptor.forClass(Instant.class);
+        verify(taskScheduler, times(2)).schedule(any(Runnable.class), next.capture());
+        long delay = Duration.between(Instant.now(), next.getAllValues().get(1)).toSeconds();
+        assertTrue(delay >= 25 && delay <= 30, "delay " + delay);
+        assertEquals("50%", stateCache.getState().snapshots().get(0).progress());
+    }
+
+    @Test
+    void resumesPendingSnapshotAfterRestart() {
+        detached(volume(VolumeState.AVAILABLE));
+        when(ec2Client.describeSnapshots(any(DescribeSnapshotsRequest.class))).thenReturn(DescribeSnapshotsResponse.builder()
+                .snapshots(snapshot("snap-pending", SnapshotState.PENDING, T0).toBuilder().volumeId("vol-1").build())
+                .build());
+
+        lifecycle.reconcile();
+
+        verify(ec2Client, never()).createSnapshot(any(CreateSnapshotRequest.class));
+        assertTrue(lifecycle.isTracking("snap-pending"));
+    }
+
+    @Test
+    void onlyRetriesDeleteOfVolumeBackedUpBefore() {
+        detached(volume(VolumeState.AVAILABLE));
+        var backedUp = snapshot("snap-done", SnapshotState.COMPLETED, T0).toBuilder()
+                .volumeId("vol-1")
+                .tags(tag("Name", "GamingRig"), tag("SourceVolume", "vol-1"))
+                .build();
+        when(ec2Client.describeSnapshots(any(DescribeSnapshotsRequest.class)))
+                .thenReturn(DescribeSnapshotsResponse.builder().snapshots(backedUp).build());
+
+        lifecycle.reconcile();
+
+        verify(ec2Client, timeout(1000)).deleteVolume(argThat((DeleteVolumeRequest request) -> "vol-1".equals(request.volumeId())));
+        verify(ec2Client, never()).createSnapshot(any(CreateSnapshotRequest.class));
+        verify(ec2Client, never()).deleteSnapshot(any(DeleteSnapshotRequest.class));
+    }
+
+    @Test
+    void ignoresEverythingWhenNoVolumeIsDetached() {
+        when(ec2Client.describeVolumes(any(DescribeVolumesRequest.class))).thenReturn(DescribeVolumesResponse.builder().build());
+
+        lifecycle.reconcile();
+
+        verify(ec2Client, never()).describeSnapshots(any(DescribeSnapshotsRequest.class));
+        verify(ec2Client, never()).createSnapshot(any(CreateSnapshotRequest.class));
+    }
+
+    @Test
+    void appliesRetentionAndDeletesVolumeOnceCompleted() throws Exception {
+        when(ec2Client.createSnapshot(any(CreateSnapshotRequest.class)))
+                .thenReturn(CreateSnapshotResponse.builder().snapshotId("snap-new").startTime(T0).build());
+        var completed = snapshot("snap-new", SnapshotState.COMPLETED, T0);
+        var pendingOther = snapshot("snap-other", SnapshotState.PENDING, T0.minusSeconds(60));
+        List<Snapshot> all = List.of(completed, snapshot("snap-old", SnapshotState.COMPLETED, T0.minus(Duration.ofDays(1))),
+                snapshot("snap-older", SnapshotState.COMPLETED, T0.minus(Duration.ofDays(2))), pendingOther);
+        when(ec2Client.describeSnapshots(any(DescribeSnapshotsRequest.class))).thenAnswer(invocation -> {
+            DescribeSnapshotsRequest request = invocation.getArgument(0);
+            return DescribeSnapshotsResponse.builder().snapshots(request.hasSnapshotIds() ? List.of(completed) : all).build();
+        });
+
+        var result = lifecycle.backup(volume(VolumeState.AVAILABLE), null);
+        ArgumentCaptor<Runnable> poll = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).schedule(poll.capture(), any(Instant.class));
+        poll.getValue().run();
+        result.get(5, TimeUnit.SECONDS);
+
+        verify(fastLaunch).reconcile(all);
+        verify(ec2Client).deleteSnapshot(argThat((DeleteSnapshotRequest request) -> "snap-old".equals(request.snapshotId())));
+        verify(ec2Client).deleteSnapshot(argThat((DeleteSnapshotRequest request) -> "snap-older".equals(request.snapshotId())));
+        verify(ec2Client, times(2)).deleteSnapshot(any(DeleteSnapshotRequest.class));
+        verify(ec2Client).deleteVolume(argThat((DeleteVolumeRequest request) -> "vol-1".equals(request.volumeId())));
+        assertFalse(lifecycle.isTracking("snap-new"));
+        assertEquals(1, meterRegistry.timer("aws.snapshot.backup").count());
+    }
+
+    @Test
+    void halvesWaveWhenThrottled() {
+        when(awsConfig.getSnapshotPollMinSeconds()).thenReturn(0L);
+        Ec2Exception throttled = (Ec2Exception) Ec2Exception.builder()
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("RequestLimitExceeded").build())
+                .statusCode(503)
+                .build();
+        when(ec2Client.deleteSnapshot(argThat((DeleteSnapshotRequest request) -> request != null && "snap-1".equals(request.snapshotId()))))
+                .thenThrow(throttled)
+                .thenReturn(DeleteSnapshotResponse.builder().build());
+
+        int deleted = lifecycle.deleteSnapshots(List.of("snap-1", "snap-2", "snap-3", "snap-4", "snap-5", "snap-6"));
+
+        assertEquals(6, deleted);
+        // 4 with one throttled, then 2, then the last one at 3
+        var waves = meterRegistry.summary("aws.snapshot.delete.wave");
+        assertEquals(3, waves.count());
+        assertEquals(7, waves.totalAmount());
+        assertEquals(4, lifecycle.currentConcurrency());
+    }
+
+    @Test
+    void keepsLatestAndOnePerDay() {
+        var retention = new SnapshotRetention(1, 3);
+        List<Snapshot> snapshots = List.of(
+                snapshot("snap-today", SnapshotState.COMPLETED, T0),
+                snapshot("snap-today-earlier", SnapshotState.COMPLETED, T0.minus(Duration.ofHours(2))),
+                snapshot("snap-yesterday", SnapshotState.COMPLETED, T0.minus(Duration.ofDays(1))),
+                snapshot("snap-week", SnapshotState.COMPLETED, T0.minus(Duration.ofDays(7))),
+                snapshot("snap-failed", SnapshotState.ERROR, T0.minus(Duration.ofDays(8))));
+
+        assertEquals(List.of("snap-today-earlier", "snap-week"),
+                retention.expired(snapshots, T0).stream().map(Snapshot::snapshotId).toList());
+    }
+
+    private void detached(Volume volume) {
+        when(ec2Client.describeVolumes(any(DescribeVolumesRequest.class)))
+                .thenReturn(DescribeVolumesResponse.builder().volumes(volume).build());
+    }
+
+    private static Volume volume(VolumeState state) {
+        return Volume.builder().volumeId("vol-1").state(state).tags(tag("Name", "GamingRig")).build();
+    }
+
+    private static Snapshot snapshot(String id, SnapshotState state, Instant startTime) {
+        return Snapshot.builder()
+                .snapshotId(id)
+                .state(state)
+                .progress(state == SnapshotState.COMPLETED ? "100%" : "0%")
+                .startTime(startTime)
+                .tags(tag("Name", "GamingRig"))
+                .build();
+    }
+
+    private static Tag tag(String key, String value) {
+        return Tag.builder().key(key).value(value).build();
+    }
+}
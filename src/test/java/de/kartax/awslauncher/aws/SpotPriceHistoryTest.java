@@ -0,0 +1,118 @@
+package de.kartax.awslauncher.aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.ec2.model.SpotPrice;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpotPriceHistoryTest {
+
+    private static final Instant NOW = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void ignoresPricesOfOtherProducts() {
+        SpotPriceHistory history = history();
+        history.record(List.of(
+                price("eu-central-1a", "Windows", 0.60, 120),
+                price("eu-central-1a", "Linux/UNIX", 0.20, 60),
+                price("eu-central-1b", "Linux/UNIX", 0.10, 60)));
+
+        assertEquals(Optional.of("eu-central-1a"), history.cheapestAz("g4dn.xlarge"));
+        assertEquals(OptionalDouble.of(0.60f), history.current("g4dn.xlarge"));
+    }
+
+    @Test
+    void picksCheapestZoneByLatestPrice() {
+        SpotPriceHistory history = history();
+        history.record(List.of(
+                price("eu-central-1a", "Windows", 0.40, 120),
+                price("eu-central-1b", "Windows", 0.80, 120),
+                price("eu-central-1b", "Windows", 0.30, 60)));
+
+        assertEquals(Optional.of("eu-central-1b"), history.cheapestAz("g4dn.xlarge"));
+        assertEquals(OptionalDouble.of(0.30f), history.current("g4dn.xlarge"));
+        assertEquals(Optional.empty(), history.cheapestAz("g5.xlarge"));
+    }
+
+    @Test
+    void percentileIncludesPriceInEffectAtWindowStart() {
+        SpotPriceHistory history = history();
+        history.record(List.of(
+                price("eu-central-1a", "Windows", 0.90, 7200),
+                price("eu-central-1a", "Windows", 0.50, 1800),
+                price("eu-central-1a", "Windows", 0.60, 1200),
+                price("eu-central-1a", "Windows", 0.70, 600)));
+
+        Duration hour = Duration.ofHours(1);
+        assertEquals(OptionalDouble.of(0.90f), history.percentile("g4dn.xlarge", "eu-central-1a", hour, 95));
+        assertEquals(OptionalDouble.of(0.60f), history.percentile("g4dn.xlarge", "eu-central-1a", hour, 50));
+        assertEquals(OptionalDouble.of(0.70f), history.percentile("g4dn.xlarge", "eu-central-1a", Duration.ofMinutes(5), 95));
+        assertEquals(OptionalDouble.empty(), history.percentile("g4dn.xlarge", "eu-central-1b", hour, 95));
+    }
+
+    @Test
+    void keepsFirstPriceOfSameTimestamp() {
+        SpotPriceHistory history = history();
+        history.record(List.of(price("eu-central-1a", "Windows", 0.40, 60)));
+        history.record(List.of(price("eu-central-1a", "Windows", 0.90, 60)));
+
+        assertEquals(OptionalDouble.of(0.40f), history.current("g4dn.xlarge"));
+    }
+
+    @Test
+    void fetchesFromOldestFetchOrWindowStart() {
+        SpotPriceHistory history = history();
+        history.record(List.of(price("eu-central-1a", "Windows", 0.40, 600)));
+        history.markFetched(List.of("g4dn.xlarge"), NOW.minusSeconds(300));
+
+        assertEquals(NOW.minusSeconds(300), history.fetchStart(List.of("g4dn.xlarge"), NOW));
+        assertEquals(NOW.minus(Duration.ofDays(7)), history.fetchStart(List.of("g4dn.xlarge", "g5.xlarge"), NOW));
+    }
+
+    @Test
+    void typeWithoutPricesIsOnlyFetchedFromLastFetch() {
+        SpotPriceHistory history = history();
+        history.markFetched(List.of("g4dn.xlarge", "g5.xlarge"), NOW.minusSeconds(60));
+        history.record(List.of(price("eu-central-1a", "Windows", 0.40, 30)));
+        history.save();
+
+        assertEquals(NOW.minusSeconds(60), history().fetchStart(List.of("g4dn.xlarge", "g5.xlarge"), NOW));
+    }
+
+    @Test
+    void restoresSavedHistoryOfSameProductOnly() {
+        SpotPriceHistory history = history();
+        history.record(List.of(price("eu-central-1a", "Windows", 0.40, 60)));
+        history.save();
+
+        assertEquals(OptionalDouble.of(0.40f), history().current("g4dn.xlarge"));
+        assertEquals(OptionalDouble.empty(),
+                new SpotPriceHistory(dir.resolve("spot-prices.bin").toString(), 7, "Linux/UNIX").current("g4dn.xlarge"));
+    }
+
+    private SpotPriceHistory history() {
+        return new SpotPriceHistory(dir.resolve("spot-prices.bin").toString(), 7, "Windows");
+    }
+
+    private static SpotPrice price(String zone, String product, double price, long ageSeconds) {
+        return SpotPrice.builder()
+                .instanceType("g4dn.xlarge")
+                .availabilityZone(zone)
+                .productDescription(product)
+                .spotPrice(String.valueOf(price))
+                .timestamp(NOW.minusSeconds(ageSeconds))
+                .build();
+    }
+}
@@ -0,0 +1,141 @@
+package de.kartax.awslauncher.dashboard;
+
+import de.kartax.awslauncher.activity.ActivityLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DashboardEventServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private ActivityLog activityLog;
+    private DashboardEventService eventService;
+
+    @BeforeEach
+    void setUp() {
+        activityLog = new ActivityLog(dir.resolve("log.txt").toString(), 100, 1024 * 1024);
+        eventService = new DashboardEventService(activityLog, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventService.stop();
+        activityLog.close();
+    }
+
+    @Test
+    void mergesEventsWhileListenerIsBusy() throws Exception {
+        var listener = new BlockingListener();
+        eventService.register(listener);
+
+        eventService.broadcastMessageOnlyEvent(this, "first");
+        assertTrue(listener.started.await(1, TimeUnit.SECONDS));
+        var cost = new DashboardUpdateEvent(this);
+        cost.setCurrentMonthCost(List.of(BigDecimal.ONE, BigDecimal.TEN));
+        eventService.broadcastEvent(cost);
+        eventService.broadcastMessageOnlyEvent(this, "third");
+        assertEquals(1, eventService.getQueueDepth());
+        listener.release.countDown();
+
+        listener.awaitEvents(2);
+        DashboardUpdateEvent merged = listener.received.get(1);
+        assertEquals("third", merged.getMessage());
+        assertEquals(List.of(BigDecimal.ONE, BigDecimal.TEN), merged.getCurrentMonthCost());
+        assertEquals(1, eventService.getMergedCount());
+        assertEquals(0, eventService.getQueueDepth());
+    }
+
+    @Test
+    void deliversInPublishingOrderOneAtATime() throws Exception {
+        var listener = new BlockingListener();
+        listener.release.countDown();
+        eventService.register(listener);
+
+        for (int i = 1; i <= 20; i++) {
+            eventService.broadcastMessageOnlyEvent(this, "event " + i);
+        }
+
+        listener.awaitMessage("event 20");
+        List<Integer> numbers = listener.received.stream()
+                .map(event -> Integer.parseInt(event.getMessage().substring("event ".length())))
+                .toList();
+        assertEquals(numbers.stream().distinct().sorted().toList(), numbers);
+        assertEquals(1, listener.maxConcurrent.get());
+        assertEquals(20, numbers.size() + eventService.getMergedCount());
+    }
+
+    @Test
+    void dropsEventsOnceDeliveryHasStopped() {
+        var listener = new BlockingListener();
+        eventService.register(listener);
+        eventService.stop();
+
+        eventService.broadcastMessageOnlyEvent(this, "too late");
+
+        assertEquals(1, eventService.getDroppedCount());
+        assertEquals(0, eventService.getQueueDepth());
+        assertTrue(listener.received.isEmpty());
+    }
+
+    @Test
+    void skipsEventsWithNothingInThem() {
+        var listener = new BlockingListener();
+        eventService.register(listener);
+
+        eventService.broadcastEvent(new DashboardUpdateEvent(this));
+
+        assertEquals(0, eventService.getPublishedCount());
+    }
+
+    private static class BlockingListener implements DashboardListener {
+
+        private final List<DashboardUpdateEvent> received = new CopyOnWriteArrayList<>();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        @Override
+        public void handleUpdate(DashboardUpdateEvent event) {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            started.countDown();
+            try {
+                release.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(event);
+            concurrent.decrementAndGet();
+        }
+
+        void awaitEvents(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (received.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, received.size());
+        }
+
+        void awaitMessage(String message) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (received.stream().noneMatch(event -> message.equals(event.getMessage())) && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(received.stream().anyMatch(event -> message.equals(event.getMessage())), message);
+        }
+    }
+}
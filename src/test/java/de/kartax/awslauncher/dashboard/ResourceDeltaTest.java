@@ -0,0 +1,82 @@
+package de.kartax.awslauncher.dashboard;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.ec2.model.Volume;
+import software.amazon.awssdk.services.ec2.model.VolumeState;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResourceDeltaTest {
+
+    @Test
+    void detectsAddedChangedAndRemoved() {
+        var delta = ResourceDelta.between(
+                List.of(volume("vol-1", VolumeState.IN_USE), volume("vol-2", VolumeState.IN_USE), volume("vol-3", VolumeState.IN_USE)),
+                List.of(volume("vol-1", VolumeState.IN_USE), volume("vol-2", VolumeState.AVAILABLE), volume("vol-4", VolumeState.CREATING)),
+                Volume::volumeId);
+
+        assertEquals(List.of(volume("vol-4", VolumeState.CREATING)), delta.getAdded());
+        assertEquals(List.of(volume("vol-2", VolumeState.AVAILABLE)), delta.getChanged());
+        assertEquals(List.of("vol-3"), delta.getRemoved());
+        assertEquals(3, delta.size());
+    }
+
+    @Test
+    void treatsMissingPreviousListAsAllAdded() {
+        var delta = ResourceDelta.between(null, List.of(volume("vol-1", VolumeState.IN_USE)), Volume::volumeId);
+
+        assertEquals(1, delta.getAdded().size());
+        assertTrue(delta.getChanged().isEmpty());
+        assertTrue(delta.getRemoved().isEmpty());
+    }
+
+    @Test
+    void isEmptyForUnchangedList() {
+        var volumes = List.of(volume("vol-1", VolumeState.IN_USE), volume("vol-2", VolumeState.AVAILABLE));
+
+        assertTrue(ResourceDelta.between(volumes, List.copyOf(volumes), Volume::volumeId).isEmpty());
+    }
+
+    @Test
+    void composesConsecutiveDeltas() {
+        var first = new ResourceDelta<>(
+                List.of(volume("vol-new", VolumeState.CREATING)),
+                List.of(volume("vol-1", VolumeState.AVAILABLE)),
+                List.of("vol-gone"));
+        var second = new ResourceDelta<>(
+                List.of(volume("vol-gone", VolumeState.CREATING)),
+                List.of(volume("vol-new", VolumeState.AVAILABLE)),
+                List.of("vol-1"));
+
+        var composed = ResourceDelta.compose(first, second, Volume::volumeId);
+
+        assertEquals(List.of(volume("vol-new", VolumeState.AVAILABLE)), composed.getAdded());
+        assertEquals(List.of(volume("vol-gone", VolumeState.CREATING)), composed.getChanged());
+        assertEquals(List.of("vol-1"), composed.getRemoved());
+    }
+
+    @Test
+    void dropsResourceAddedAndRemovedAgain() {
+        var first = new ResourceDelta<>(List.of(volume("vol-new", VolumeState.CREATING)), List.<Volume>of(), List.<String>of());
+        var second = new ResourceDelta<>(List.<Volume>of(), List.<Volume>of(), List.of("vol-new"));
+
+        assertTrue(ResourceDelta.compose(first, second, Volume::volumeId).isEmpty());
+    }
+
+    @Test
+    void appliesToListItWasComputedFrom() {
+        var previous = List.of(volume("vol-1", VolumeState.IN_USE), volume("vol-2", VolumeState.AVAILABLE));
+        var current = List.of(volume("vol-2", VolumeState.DELETING), volume("vol-3", VolumeState.CREATING));
+        var delta = ResourceDelta.between(previous, current, Volume::volumeId);
+
+        assertEquals(current, delta.applyTo(previous, Volume::volumeId));
+        assertEquals(current, delta.applyTo(delta.applyTo(previous, Volume::volumeId), Volume::volumeId));
+    }
+
+    private static Volume volume(String id, VolumeState state) {
+        return Volume.builder().volumeId(id).state(state).build();
+    }
+}